@@ -0,0 +1,23 @@
+package me.yuzu.vts.fft;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkRunner {
+
+	// Every benchmark processes the audio of one hop per operation. The results are reported in
+	// nanoseconds per hop and the GC profiler adds the bytes allocated per hop (gc.alloc.rate.norm).
+	// Takes the same arguments as the JMH command line, e.g. a regular expression to select benchmarks.
+	public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		new Runner(new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
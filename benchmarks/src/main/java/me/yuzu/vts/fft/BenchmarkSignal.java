@@ -0,0 +1,31 @@
+package me.yuzu.vts.fft;
+
+import java.util.Random;
+
+public class BenchmarkSignal {
+
+	// Number of frames that are processed in each benchmark operation (the default hop size).
+	public static final int HOP_SIZE = 1024;
+
+	// Fills the samples with a few tones and some noise such that every frequency range has some energy.
+	// The random generator has a fixed seed so every run processes the same audio.
+	public static final void fill(float[] samples, float sampleRate) {
+		final Random random = new Random(42);
+		for (int sample = 0; sample < samples.length; sample++) {
+			final double time = sample / (double) sampleRate;
+			samples[sample] = (float) (0.3d * Math.sin(2.0d * Math.PI * 110.0d * time)
+					+ 0.2d * Math.sin(2.0d * Math.PI * 1000.0d * time)
+					+ 0.1d * Math.sin(2.0d * Math.PI * 6000.0d * time)
+					+ 0.05d * (random.nextDouble() * 2.0d - 1.0d));
+		}
+	}
+
+	// Fills the magnitudes with values that fall with the frequency like music usually does.
+	public static final void fill(double[] magnitudes) {
+		final Random random = new Random(42);
+		for (int bin = 0; bin < magnitudes.length; bin++) {
+			magnitudes[bin] = random.nextDouble() / (1.0d + bin);
+		}
+	}
+
+}
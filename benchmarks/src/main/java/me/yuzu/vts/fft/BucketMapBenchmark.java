@@ -0,0 +1,80 @@
+package me.yuzu.vts.fft;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.yuzu.vts.fft.FftService.BucketType;
+
+// Sums the magnitudes of all multi FFT sizes into the buckets like the analysis does in each hop.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BucketMapBenchmark {
+
+	// Same sizes as the multi FFT analysis without the low latency preset: 65536 down to 64 samples.
+	private static final int INPUT_SIZE = 65536;
+	private static final int SIZES = 11;
+
+	@Param({ "LINEAR", "LOGARITHMIC" })
+	public BucketType bucketType;
+
+	@Param({ "6", "32", "128" })
+	public int buckets;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	private BucketMap bucketMap;
+	private double[][][] magnitudes;
+	private float[] level;
+
+	@Setup
+	public void setup() {
+		final int[][] frequencyRanges = new int[SIZES][];
+		for (int size = 0; size < SIZES; size++) {
+			frequencyRanges[size] = new int[] { 1 << size, INPUT_SIZE };
+		}
+		bucketMap = BucketMap.createForFrequencies(bucketType, buckets, 25, 10000, frequencyRanges);
+
+		magnitudes = new double[channels][SIZES][];
+		for (int channel = 0; channel < channels; channel++) {
+			for (int size = 0; size < SIZES; size++) {
+				magnitudes[channel][size] = new double[(INPUT_SIZE >> size) / 2];
+				BenchmarkSignal.fill(magnitudes[channel][size]);
+			}
+		}
+		level = new float[channels * buckets];
+	}
+
+	@Benchmark
+	public float[] accumulate() {
+		Arrays.fill(level, 0.0f);
+		for (int channel = 0; channel < channels; channel++) {
+			for (int size = 0; size < SIZES; size++) {
+				bucketMap.accumulate(size, magnitudes[channel][size], level, channel * buckets);
+			}
+		}
+		for (int channel = 0; channel < channels; channel++) {
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				level[channel * buckets + bucket] /= bucketMap.getBucketWeight(bucket);
+			}
+		}
+		return level;
+	}
+
+}
@@ -0,0 +1,67 @@
+package me.yuzu.vts.fft;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.yuzu.vts.fft.FftService.WindowType;
+
+// Windowing and transformation of a single FFT of each size that the multi FFT analysis uses.
+// The analysis runs these for every due size and channel in a hop.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FftBenchmark {
+
+	@Param({ "256", "1024", "4096", "16384", "65536" })
+	public int size;
+
+	@Param({ "HANN", "BLACKMAN_HARRIS" })
+	public WindowType windowType;
+
+	private DspKernels kernels;
+	private RealFftEngine engine;
+	private float[] input;
+	private double[] window;
+	private double[] windowed;
+	private double[] magnitudes;
+
+	@Setup
+	public void setup() {
+		kernels = DspKernels.getDefault();
+		engine = new RealFftEngine(kernels);
+		engine.prepare(size);
+		input = new float[size];
+		BenchmarkSignal.fill(input, 44100.0f);
+		window = new WindowTables().get(windowType, size);
+		windowed = new double[size];
+		magnitudes = new double[size / 2];
+		kernels.window(input, 0, window, windowed, 0, size);
+	}
+
+	@Benchmark
+	public double[] window() {
+		kernels.window(input, 0, window, windowed, 0, size);
+		return windowed;
+	}
+
+	@Benchmark
+	public double[] magnitudes() {
+		engine.magnitudes(windowed, magnitudes);
+		return magnitudes;
+	}
+
+}
@@ -0,0 +1,99 @@
+package me.yuzu.vts.fft;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.TextMessage;
+
+import me.yuzu.vts.fft.FftService.FftData;
+
+// Builds the InjectParameterDataRequest for one analysis result like the VTS service does before sending it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectMessageBenchmark {
+
+	@Param({ "6", "32", "128" })
+	public int buckets;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	// Zero sends every value, otherwise only the values that changed by at least the threshold.
+	@Param({ "0", "0.1" })
+	public double changeThreshold;
+
+	private InjectParameterWriter writer;
+	private ParameterChangeFilter filter;
+	private float[] values;
+	private boolean[] included;
+	private FftData[] frames;
+	private int frame;
+	private long requestId;
+
+	@Setup
+	public void setup() {
+		writer = new InjectParameterWriter(VtsService.createParameterNames(channels, buckets));
+		filter = new ParameterChangeFilter(writer.getParameters(), changeThreshold, 0.0d, TimeUnit.MILLISECONDS.toNanos(500));
+		values = new float[writer.getParameters()];
+		included = new boolean[writer.getParameters()];
+
+		// A few different results such that some values change between two messages.
+		final Random random = new Random(42);
+		final FftDataPool pool = new FftDataPool(25, 10000, channels, buckets, 8);
+		frames = new FftData[8];
+		for (int index = 0; index < frames.length; index++) {
+			frames[index] = pool.acquire();
+			for (int channel = 0; channel < channels; channel++) {
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					final float level = random.nextFloat() * 0.5f;
+					frames[index].setValues(channel, bucket, level, level + 0.1f, 1.0f);
+				}
+			}
+		}
+		frame = 0;
+		requestId = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (FftData fftData : frames) {
+			fftData.release();
+		}
+	}
+
+	@Benchmark
+	public TextMessage write() {
+		final FftData fftData = frames[frame];
+		frame = (frame + 1) % frames.length;
+
+		int parameter = 0;
+		for (int channel = 0; channel < fftData.getChannels(); channel++) {
+			for (int bucket = 0; bucket < fftData.getBuckets(); bucket++) {
+				values[parameter++] = fftData.getLevel(channel, bucket) * 50.0f;
+				values[parameter++] = fftData.getPeak(channel, bucket) * 50.0f;
+			}
+		}
+
+		if (filter.filter(values, included, System.nanoTime()) == 0) {
+			return null;
+		}
+		return new TextMessage(writer.write(requestId++, values, included));
+	}
+
+}
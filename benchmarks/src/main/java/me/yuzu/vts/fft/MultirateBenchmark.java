@@ -0,0 +1,83 @@
+package me.yuzu.vts.fft;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.yuzu.vts.fft.FftService.WindowType;
+
+// One hop of the multirate FFT analysis: decimation into the octaves and a small FFT for each octave.
+// The number of octaves depends on the sample rate since the lowest octave has to reach the start frequency.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultirateBenchmark {
+
+	private static final int FFT_SIZE = 256;
+	private static final int MAX_OCTAVES = 12;
+	private static final int FREQUENCY_START = 25;
+
+	@Param({ "44100", "48000", "96000" })
+	public int sampleRate;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	private RealFftEngine engine;
+	private OctavePyramid[] octaves;
+	private float[][] input;
+	private double[] window;
+	private double[] windowed;
+	private double[] magnitudes;
+	private int inputOffset;
+
+	@Setup
+	public void setup() {
+		// Same number of octaves as the analysis uses for the default start frequency.
+		int octaveCount = 1;
+		while (octaveCount < MAX_OCTAVES && sampleRate / Math.pow(2.0d, octaveCount - 1) / 8.0d > FREQUENCY_START) {
+			octaveCount++;
+		}
+
+		engine = new RealFftEngine();
+		engine.prepare(FFT_SIZE);
+		octaves = new OctavePyramid[channels];
+		input = new float[channels][16 * BenchmarkSignal.HOP_SIZE];
+		for (int channel = 0; channel < channels; channel++) {
+			octaves[channel] = new OctavePyramid(octaveCount, FFT_SIZE);
+			BenchmarkSignal.fill(input[channel], sampleRate);
+		}
+		window = new WindowTables().get(WindowType.HANN, FFT_SIZE);
+		windowed = new double[FFT_SIZE];
+		magnitudes = new double[FFT_SIZE / 2];
+		inputOffset = 0;
+	}
+
+	@Benchmark
+	public double[] hop() {
+		for (int channel = 0; channel < channels; channel++) {
+			final OctavePyramid pyramid = octaves[channel];
+			pyramid.process(input[channel], inputOffset, BenchmarkSignal.HOP_SIZE);
+			for (int octave = 0; octave < pyramid.getOctaves(); octave++) {
+				pyramid.copyWindowed(octave, window, windowed);
+				engine.magnitudes(windowed, magnitudes);
+			}
+		}
+		inputOffset = (inputOffset + BenchmarkSignal.HOP_SIZE) % input[0].length;
+		return magnitudes;
+	}
+
+}
@@ -0,0 +1,62 @@
+package me.yuzu.vts.fft;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Conversion of the PCM data of one hop into the float samples of the capture ring.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcmDecoderBenchmark {
+
+	private static final int RING_SIZE = 131072;
+
+	@Param({ "16", "24", "32" })
+	public int bitsPerSample;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	private PcmDecoder decoder;
+	private byte[] input;
+	private float[][] ring;
+	private int ringIndex;
+
+	@Setup
+	public void setup() {
+		// The sample rate does not change the decoding, only the sample format does.
+		final AudioFormat format = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 44100.0f, bitsPerSample, channels,
+				bitsPerSample * channels / 8, 44100.0f, false);
+		decoder = PcmDecoder.create(format, DspKernels.getDefault());
+		input = new byte[BenchmarkSignal.HOP_SIZE * format.getFrameSize()];
+		new Random(42).nextBytes(input);
+		ring = new float[channels][RING_SIZE];
+		ringIndex = 0;
+	}
+
+	@Benchmark
+	public float[][] decode() {
+		// Moves through the ring like the capture thread such that the wrap around is included.
+		decoder.decode(input, BenchmarkSignal.HOP_SIZE, ring, ringIndex);
+		ringIndex = (ringIndex + BenchmarkSignal.HOP_SIZE + 1) % RING_SIZE;
+		return ring;
+	}
+
+}
@@ -0,0 +1,70 @@
+package me.yuzu.vts.fft;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.yuzu.vts.fft.FftService.OutputType;
+
+// Scales the bucket levels to the output range and updates the peaks like the analysis does at the end of each hop.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScaleOutputBenchmark {
+
+	@Param({ "LINEAR", "LOGARITHMIC" })
+	public OutputType outputType;
+
+	@Param({ "6", "32", "128" })
+	public int buckets;
+
+	@Param({ "1", "2" })
+	public int channels;
+
+	private float[] levels;
+	private float[] samples;
+	private float[] frameLevels;
+	private float[] framePeaks;
+	private float[][] peaks;
+	private float peakDecay;
+
+	@Setup
+	public void setup() {
+		final Random random = new Random(42);
+		levels = new float[channels * buckets];
+		samples = new float[channels * buckets];
+		for (int index = 0; index < levels.length; index++) {
+			samples[index] = 1 + random.nextInt(8);
+			levels[index] = random.nextFloat() * 0.5f * samples[index];
+		}
+		frameLevels = new float[channels * buckets];
+		framePeaks = new float[channels * buckets];
+		peaks = new float[channels][buckets];
+		peakDecay = FftService.getPeakDecay(44100.0f, BenchmarkSignal.HOP_SIZE, new Settings().peakHalfLife);
+	}
+
+	@Benchmark
+	public float[] scaleOutput() {
+		// The levels are scaled in place, so every call starts from the summed up levels of a new window.
+		System.arraycopy(levels, 0, frameLevels, 0, levels.length);
+		for (int channel = 0; channel < channels; channel++) {
+			FftService.scaleChannel(outputType, 1.0d, 0.0001d, peakDecay, frameLevels, samples, framePeaks, channel * buckets, peaks[channel]);
+		}
+		return framePeaks;
+	}
+
+}
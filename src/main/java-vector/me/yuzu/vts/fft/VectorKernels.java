@@ -0,0 +1,116 @@
+package me.yuzu.vts.fft;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorKernels implements DspKernels {
+
+	// The float and short species have the same number of lanes as the double
+	// and float species that they are converted to.
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> HALF_FLOATS = VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Short> HALF_SHORTS = VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+
+	// Scratch buffer for the PCM conversion. The kernels are shared by all analyses of the process
+	// (see DspKernels.getDefault), so every capture thread gets its own buffer.
+	private final ThreadLocal<short[]> pcmBuffers;
+
+	public VectorKernels() {
+		this.pcmBuffers = ThreadLocal.withInitial(() -> new short[0]);
+	}
+
+	@Override
+	public void window(float[] input, int inputOffset, double[] window, double[] output, int outputOffset, int count) {
+		final int lanes = DOUBLES.length();
+		final int bound = count - count % lanes;
+
+		int index = 0;
+		for (; index < bound; index += lanes) {
+			final DoubleVector samples = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, input, inputOffset + index)
+					.convertShape(VectorOperators.F2D, DOUBLES, 0);
+			samples.mul(DoubleVector.fromArray(DOUBLES, window, outputOffset + index))
+					.intoArray(output, outputOffset + index);
+		}
+		for (; index < count; index++) {
+			output[outputOffset + index] = input[inputOffset + index] * window[outputOffset + index];
+		}
+	}
+
+	@Override
+	public void magnitudes(double[] real, double[] imaginary, double[] output, int count) {
+		final int lanes = DOUBLES.length();
+		final int bound = count - count % lanes;
+
+		int index = 0;
+		for (; index < bound; index += lanes) {
+			final DoubleVector re = DoubleVector.fromArray(DOUBLES, real, index);
+			final DoubleVector im = DoubleVector.fromArray(DOUBLES, imaginary, index);
+			re.mul(re).add(im.mul(im)).sqrt().intoArray(output, index);
+		}
+		for (; index < count; index++) {
+			output[index] = Math.sqrt(real[index] * real[index] + imaginary[index] * imaginary[index]);
+		}
+	}
+
+	@Override
+	public double weightedSum(double[] values, int[] indices, float[] weights, int from, int to) {
+		final int lanes = DOUBLES.length();
+		final int bound = to - (to - from) % lanes;
+
+		// Gathers the values of the bins and multiplies them with the weights of the bins.
+		DoubleVector sums = DoubleVector.zero(DOUBLES);
+		int index = from;
+		for (; index < bound; index += lanes) {
+			final DoubleVector binWeights = (DoubleVector) FloatVector.fromArray(HALF_FLOATS, weights, index)
+					.convertShape(VectorOperators.F2D, DOUBLES, 0);
+			sums = DoubleVector.fromArray(DOUBLES, values, 0, indices, index).fma(binWeights, sums);
+		}
+
+		double sum = sums.reduceLanes(VectorOperators.ADD);
+		for (; index < to; index++) {
+			sum += weights[index] * values[indices[index]];
+		}
+		return sum;
+	}
+
+	@Override
+	public void convertPcm16(byte[] input, int inputOffset, float[] output, int outputOffset, int count) {
+		short[] pcmBuffer = pcmBuffers.get();
+		if (pcmBuffer.length < count) {
+			pcmBuffer = new short[count];
+			pcmBuffers.set(pcmBuffer);
+		}
+
+		// The byte buffer view assembles the little-endian samples, then they are converted in bulk.
+		ByteBuffer.wrap(input, inputOffset, 2 * count).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(pcmBuffer, 0, count);
+
+		final int lanes = FLOATS.length();
+		final int bound = count - count % lanes;
+		final float scale = 1.0f / (128.0f * 256.0f);
+
+		int index = 0;
+		for (; index < bound; index += lanes) {
+			((FloatVector) ShortVector.fromArray(HALF_SHORTS, pcmBuffer, index)
+					.convertShape(VectorOperators.S2F, FLOATS, 0))
+					.mul(scale)
+					.intoArray(output, outputOffset + index);
+		}
+		for (; index < count; index++) {
+			output[outputOffset + index] = pcmBuffer[index] * scale;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "vector (" + DOUBLES.vectorBitSize() + " bit)";
+	}
+
+}
@@ -0,0 +1,35 @@
+package me.yuzu.vts.fft;
+
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+
+public interface AudioSource {
+
+	// Opens the source for the number of channels. The buffer size (in frames) is a hint for
+	// how much audio the source should be able to hold while the previous data is processed.
+	public void open(int channels, int bufferFrames) throws IOException;
+
+	// The format of the data returned by read. Only valid after the source has been opened.
+	// The data is always signed little-endian PCM.
+	public AudioFormat getFormat();
+
+	// Reads whole frames into the buffer and blocks until the buffer is full. Returns less
+	// data if the source has been stopped or has no more data.
+	public int read(byte[] buffer, int offset, int length);
+
+	// Returns how many bytes are already waiting to be read. Used to estimate when the read data has been recorded.
+	public int available();
+
+	// Real time sources deliver the data at the rate it is recorded and drop data that is not read in time.
+	// Other sources deliver the data as fast as it is read and wait for the reader instead.
+	public boolean isRealTime();
+
+	// Stops the source such that a blocked read returns.
+	public void stop();
+
+	public void close();
+
+	public String getName();
+
+}
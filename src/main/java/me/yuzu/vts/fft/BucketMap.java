@@ -0,0 +1,230 @@
+package me.yuzu.vts.fft;
+
+import java.util.Arrays;
+
+import me.yuzu.vts.fft.FftService.BucketType;
+
+public class BucketMap {
+
+	private final DspKernels kernels;
+	private final int buckets;
+
+	// Compressed sparse rows for each FFT size: The entries of a bucket are stored from
+	// bucketOffsets[size][bucket] to bucketOffsets[size][bucket + 1] and each entry is
+	// a frequency bin of the FFT output and the weight with that it is added to the bucket.
+	private final int[][] bucketOffsets;
+	private final int[][] bins;
+	private final float[][] weights;
+	private final float[] sizeScales;
+
+	// Sum of the weights of all FFT sizes for each bucket.
+	private final float[] bucketWeights;
+
+	private BucketMap(int buckets, int sizes) {
+		this.kernels = DspKernels.getDefault();
+		this.buckets = buckets;
+		this.bucketOffsets = new int[sizes][];
+		this.bins = new int[sizes][];
+		this.weights = new float[sizes][];
+		this.sizeScales = new float[sizes];
+		this.bucketWeights = new float[buckets];
+	}
+
+	// Creates the map for FFT outputs where each integer frequency from the frequency start
+	// to the frequency end is sampled once. The frequency range of each FFT size is given
+	// as [start, end) and the start is also the width of the frequency bins.
+	public static final BucketMap createForFrequencies(BucketType bucketType, int buckets, int frequencyStart, int frequencyEnd, int[][] frequencyRanges) {
+		final BucketMap map = new BucketMap(buckets, frequencyRanges.length);
+
+		for (int size = 0; size < frequencyRanges.length; size++) {
+			final int rangeStart = frequencyRanges[size][0];
+			final int rangeEnd = frequencyRanges[size][1];
+
+			// Each frequency is counted once. Because bins and buckets are both monotonic in
+			// the frequency equal pairs follow each other and can be merged into one weighted entry.
+			final int capacity = Math.max(0, frequencyEnd - frequencyStart);
+			final int[] entryBuckets = new int[capacity];
+			final int[] entryBins = new int[capacity];
+			final float[] entryWeights = new float[capacity];
+			int entries = 0;
+
+			for (int frequency = frequencyStart; frequency < frequencyEnd; frequency++) {
+				if (frequency < rangeStart || frequency >= rangeEnd) {
+					continue;
+				}
+
+				final int bucket = getBucketForFrequency(bucketType, buckets, frequencyStart, frequencyEnd, frequency);
+				final int bin = (frequency - rangeStart) / rangeStart;
+				if (entries > 0 && entryBuckets[entries - 1] == bucket && entryBins[entries - 1] == bin) {
+					entryWeights[entries - 1] += 1.0f;
+				} else {
+					entryBuckets[entries] = bucket;
+					entryBins[entries] = bin;
+					entryWeights[entries] = 1.0f;
+					entries++;
+				}
+			}
+
+			map.setEntries(size, entryBuckets, entryBins, entryWeights, entries, 1.0f);
+		}
+
+		return map;
+	}
+
+	// Creates the map for FFT outputs with the given bin widths in Hz where each FFT size only covers
+	// the frequency band [bandStart, bandEnd). Every bin spans half a bin width around its center frequency
+	// and is weighted with the number of Hz that it overlaps with a bucket. The magnitudes of each
+	// FFT size are multiplied with the scale of the size.
+	public static final BucketMap createForBins(BucketType bucketType, int buckets, int frequencyStart, int frequencyEnd,
+			double[] binWidths, int[] binCounts, double[][] bands, float[] scales) {
+		final BucketMap map = new BucketMap(buckets, binWidths.length);
+
+		final double[] bucketEdges = new double[buckets + 1];
+		for (int bucket = 0; bucket <= buckets; bucket++) {
+			bucketEdges[bucket] = getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket);
+		}
+
+		for (int size = 0; size < binWidths.length; size++) {
+			final int capacity = binCounts[size] + buckets;
+			final int[] entryBuckets = new int[capacity];
+			final int[] entryBins = new int[capacity];
+			final float[] entryWeights = new float[capacity];
+			int entries = 0;
+
+			// Bins and buckets are both sorted by frequency and so each bin only has to look at the
+			// buckets starting from the last one that it overlapped with.
+			int bucket = 0;
+			for (int bin = 0; bin < binCounts[size]; bin++) {
+				final double binStart = Math.max(bands[size][0], Math.max(frequencyStart, (bin - 0.5d) * binWidths[size]));
+				final double binEnd = Math.min(bands[size][1], Math.min(frequencyEnd, (bin + 0.5d) * binWidths[size]));
+				if (binEnd <= binStart) {
+					continue;
+				}
+
+				while (bucket < buckets && bucketEdges[bucket + 1] <= binStart) {
+					bucket++;
+				}
+				for (int overlapBucket = bucket; overlapBucket < buckets && bucketEdges[overlapBucket] < binEnd; overlapBucket++) {
+					final double overlap = Math.min(binEnd, bucketEdges[overlapBucket + 1]) - Math.max(binStart, bucketEdges[overlapBucket]);
+					if (overlap <= 0.0d) {
+						continue;
+					}
+
+					entryBuckets[entries] = overlapBucket;
+					entryBins[entries] = bin;
+					entryWeights[entries] = (float) overlap;
+					entries++;
+				}
+			}
+
+			// The entries are sorted by bin and have to be sorted by bucket for the rows.
+			map.setEntries(size, entryBuckets, entryBins, entryWeights, entries, scales[size]);
+		}
+
+		return map;
+	}
+
+	private final void setEntries(int size, int[] entryBuckets, int[] entryBins, float[] entryWeights, int entries, float scale) {
+		final int[] offsets = new int[buckets + 1];
+		for (int entry = 0; entry < entries; entry++) {
+			offsets[entryBuckets[entry] + 1]++;
+			bucketWeights[entryBuckets[entry]] += entryWeights[entry];
+		}
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			offsets[bucket + 1] += offsets[bucket];
+		}
+
+		// Counting sort of the entries by bucket which keeps the order of the bins within a bucket.
+		final int[] positions = Arrays.copyOf(offsets, buckets);
+		final int[] sortedBins = new int[entries];
+		final float[] sortedWeights = new float[entries];
+		for (int entry = 0; entry < entries; entry++) {
+			final int position = positions[entryBuckets[entry]]++;
+			sortedBins[position] = entryBins[entry];
+			sortedWeights[position] = entryWeights[entry];
+		}
+
+		bucketOffsets[size] = offsets;
+		bins[size] = sortedBins;
+		weights[size] = sortedWeights;
+		sizeScales[size] = scale;
+	}
+
+	public final int getBuckets() {
+		return buckets;
+	}
+
+	public final int getSizes() {
+		return bucketOffsets.length;
+	}
+
+	public final float getBucketWeight(int bucket) {
+		return bucketWeights[bucket];
+	}
+
+	// Adds the weighted magnitudes of the FFT size to the bucket levels starting at the offset.
+	public final void accumulate(int size, double[] magnitudes, float[] level, int levelOffset) {
+		final int[] offsets = bucketOffsets[size];
+		final int[] sizeBins = bins[size];
+		final float[] sizeWeights = weights[size];
+
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			final double sum = kernels.weightedSum(magnitudes, sizeBins, sizeWeights, offsets[bucket], offsets[bucket + 1]);
+			level[levelOffset + bucket] += (float) (sum * sizeScales[size]);
+		}
+	}
+
+	public static final int getBucketForFrequency(BucketType bucketType, int buckets, int frequencyStart, int frequencyEnd, int frequency) {
+		if (bucketType == null) { bucketType = BucketType.LINEAR; }
+
+		switch (bucketType) {
+		case LINEAR:
+			return buckets * (frequency - frequencyStart) / (frequencyEnd - frequencyStart);
+
+		case LOGARITHMIC:
+			return (int) (buckets * (Math.log(frequency) - Math.log(frequencyStart)) / (Math.log(frequencyEnd) - Math.log(frequencyStart)));
+
+		default:
+			throw new IllegalArgumentException("Unsupported bucket type");
+
+		}
+	}
+
+	// Returns the lower frequency of the bucket which is also the upper frequency of the bucket before.
+	// This is the inverse of getBucketForFrequency.
+	public static final double getFrequencyForBucket(BucketType bucketType, int buckets, int frequencyStart, int frequencyEnd, int bucket) {
+		if (bucketType == null) { bucketType = BucketType.LINEAR; }
+
+		switch (bucketType) {
+		case LINEAR:
+			return frequencyStart + (double) bucket * (frequencyEnd - frequencyStart) / buckets;
+
+		case LOGARITHMIC:
+			return Math.exp(Math.log(frequencyStart) + bucket * (Math.log(frequencyEnd) - Math.log(frequencyStart)) / buckets);
+
+		default:
+			throw new IllegalArgumentException("Unsupported bucket type");
+
+		}
+	}
+
+	// Returns the frequency in the middle of the bucket (on a logarithmic scale for logarithmic buckets).
+	public static final double getCenterFrequencyForBucket(BucketType bucketType, int buckets, int frequencyStart, int frequencyEnd, int bucket) {
+		if (bucketType == null) { bucketType = BucketType.LINEAR; }
+
+		final double lowerFrequency = getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket);
+		final double upperFrequency = getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket + 1);
+		switch (bucketType) {
+		case LINEAR:
+			return 0.5d * (lowerFrequency + upperFrequency);
+
+		case LOGARITHMIC:
+			return Math.sqrt(lowerFrequency * upperFrequency);
+
+		default:
+			throw new IllegalArgumentException("Unsupported bucket type");
+
+		}
+	}
+
+}
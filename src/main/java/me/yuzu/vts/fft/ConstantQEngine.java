@@ -0,0 +1,172 @@
+package me.yuzu.vts.fft;
+
+import java.util.Arrays;
+
+import me.yuzu.vts.fft.FftService.WindowType;
+
+public class ConstantQEngine {
+
+	// Spectral kernel values below this fraction of the largest value of a band are dropped
+	// (see "An efficient algorithm for the calculation of a constant Q transform" by Brown and Puckette).
+	private static final double KERNEL_THRESHOLD = 0.0054d;
+
+	// The kernels always use a Hann window. Its main lobe is two bins wide on each side, so the kernels
+	// are twice as long as needed to resolve the bandwidth. The first zero of a kernel then lies at
+	// the center of the neighboring bucket instead of the neighbors leaking into each other.
+	private static final WindowType KERNEL_WINDOW = WindowType.HANN;
+	private static final int KERNEL_LOBE_WIDTH = 2;
+
+	private final FftEngine fft;
+	private final float frameRate;
+	private final double[] centerFrequencies;
+	private final int[] lengths;
+	private final int size;
+	private final int bands;
+
+	// Sparse spectral kernel in compressed sparse rows: The bins of a band are stored from
+	// bandOffsets[band] to bandOffsets[band + 1] together with the complex kernel value.
+	private int[] bandOffsets;
+	private int[] bins;
+	private double[] kernelRe;
+	private double[] kernelIm;
+
+	private final double[] spectrumRe;
+	private final double[] spectrumIm;
+	private final double[] magnitudes;
+
+	// Creates a constant Q transformation for bands with the given center frequencies and bandwidths.
+	// The temporal kernel of each band is as long as needed to resolve its bandwidth and all kernels
+	// are aligned to the end of the analyzed frame such that the newest samples are used by all bands.
+	public ConstantQEngine(FftEngine fft, float frameRate, double[] centerFrequencies, double[] bandwidths, int maxSize) {
+		this.fft = fft;
+		this.frameRate = frameRate;
+		this.centerFrequencies = centerFrequencies.clone();
+		this.bands = centerFrequencies.length;
+		this.lengths = new int[bands];
+
+		int longest = 16;
+		for (int band = 0; band < bands; band++) {
+			lengths[band] = (int) Math.max(16, Math.min(maxSize, Math.round(KERNEL_LOBE_WIDTH * frameRate / bandwidths[band])));
+			longest = Math.max(longest, lengths[band]);
+		}
+
+		// One FFT of the next power of two covers the longest kernel.
+		this.size = Math.min(maxSize, Integer.highestOneBit(longest - 1) << 1);
+		this.spectrumRe = new double[size / 2];
+		this.spectrumIm = new double[size / 2];
+		this.magnitudes = new double[bands];
+
+		createKernels();
+	}
+
+	public final int getSize() {
+		return size;
+	}
+
+	public final int getBands() {
+		return bands;
+	}
+
+	public final int getLength(int band) {
+		return lengths[band];
+	}
+
+	public final int getKernelEntries() {
+		return bandOffsets[bands];
+	}
+
+	// Analyzes a frame of getSize() samples with the newest sample at the end of the frame.
+	public final void process(double[] frame) {
+		fft.transform(frame, spectrumRe, spectrumIm);
+
+		// cq[k] = sum(x[n] * conj(t[k][n])) = 1 / N * sum(X[j] * conj(T[k][j])) due to Parseval's theorem
+		// and the conjugated spectral kernel already contains the factor 1 / N. The kernels are also divided
+		// by the sum of their window such that a sine results in half its amplitude in every band.
+		for (int band = 0; band < bands; band++) {
+			double re = 0.0d;
+			double im = 0.0d;
+			for (int entry = bandOffsets[band]; entry < bandOffsets[band + 1]; entry++) {
+				final int bin = bins[entry];
+				re += spectrumRe[bin] * kernelRe[entry] - spectrumIm[bin] * kernelIm[entry];
+				im += spectrumRe[bin] * kernelIm[entry] + spectrumIm[bin] * kernelRe[entry];
+			}
+			magnitudes[band] = Math.sqrt(re * re + im * im);
+		}
+	}
+
+	// Returns the magnitude of the band, which is half the amplitude of a sine at the center frequency.
+	public final double getMagnitude(int band) {
+		return magnitudes[band];
+	}
+
+	private final void createKernels() {
+		final int half = size / 2;
+		final double[] temporalRe = new double[size];
+		final double[] temporalIm = new double[size];
+		final double[] realRe = new double[half];
+		final double[] realIm = new double[half];
+		final double[] imaginaryRe = new double[half];
+		final double[] imaginaryIm = new double[half];
+
+		final int[] offsets = new int[bands + 1];
+		int[] entryBins = new int[64];
+		double[] entryRe = new double[64];
+		double[] entryIm = new double[64];
+		int entries = 0;
+
+		for (int band = 0; band < bands; band++) {
+			// Temporal kernel t[n] = w[n] * e^(i * 2 * pi * f * n / fs) at the end of the frame.
+			final int length = lengths[band];
+			final int start = size - length;
+			final double[] window = WindowTables.create(KERNEL_WINDOW, length);
+			double windowSum = 0.0d;
+			for (int offset = 0; offset < length; offset++) {
+				windowSum += window[offset];
+			}
+			Arrays.fill(temporalRe, 0.0d);
+			Arrays.fill(temporalIm, 0.0d);
+			for (int offset = 0; offset < length; offset++) {
+				final double phase = 2.0d * Math.PI * centerFrequencies[band] * offset / frameRate;
+				temporalRe[start + offset] = window[offset] * Math.cos(phase);
+				temporalIm[start + offset] = window[offset] * Math.sin(phase);
+			}
+
+			// T = FFT(Re(t)) + i * FFT(Im(t)) since the transformation is linear.
+			fft.transform(temporalRe, realRe, realIm);
+			fft.transform(temporalIm, imaginaryRe, imaginaryIm);
+
+			double maximum = 0.0d;
+			for (int bin = 0; bin < half; bin++) {
+				final double re = realRe[bin] - imaginaryIm[bin];
+				final double im = realIm[bin] + imaginaryRe[bin];
+				maximum = Math.max(maximum, Math.sqrt(re * re + im * im));
+			}
+
+			// Only keep the significant part of the kernel and store it conjugated and normalized.
+			for (int bin = 0; bin < half; bin++) {
+				final double re = realRe[bin] - imaginaryIm[bin];
+				final double im = realIm[bin] + imaginaryRe[bin];
+				if (Math.sqrt(re * re + im * im) < KERNEL_THRESHOLD * maximum) {
+					continue;
+				}
+
+				if (entries == entryBins.length) {
+					entryBins = Arrays.copyOf(entryBins, entries * 2);
+					entryRe = Arrays.copyOf(entryRe, entries * 2);
+					entryIm = Arrays.copyOf(entryIm, entries * 2);
+				}
+				entryBins[entries] = bin;
+				entryRe[entries] = re / size / windowSum;
+				entryIm[entries] = -im / size / windowSum;
+				entries++;
+			}
+			offsets[band + 1] = entries;
+		}
+
+		this.bandOffsets = offsets;
+		this.bins = Arrays.copyOf(entryBins, entries);
+		this.kernelRe = Arrays.copyOf(entryRe, entries);
+		this.kernelIm = Arrays.copyOf(entryIm, entries);
+	}
+
+}
@@ -0,0 +1,48 @@
+package me.yuzu.vts.fft;
+
+public interface DspKernels {
+
+	// Name of the class that is only available when building with the "vector" profile.
+	public static final String VECTOR_KERNELS_CLASS = "me.yuzu.vts.fft.VectorKernels";
+
+	// Multiplies input[inputOffset + i] with window[outputOffset + i] and stores it in output[outputOffset + i].
+	public void window(float[] input, int inputOffset, double[] window, double[] output, int outputOffset, int count);
+
+	// Stores sqrt(real[i]^2 + imaginary[i]^2) in output[i].
+	public void magnitudes(double[] real, double[] imaginary, double[] output, int count);
+
+	// Returns the sum of weights[i] * values[indices[i]] for i from "from" to "to" (exclusive).
+	public double weightedSum(double[] values, int[] indices, float[] weights, int from, int to);
+
+	// Converts signed 16 bit little-endian mono PCM samples to floats between -1 and 1.
+	public void convertPcm16(byte[] input, int inputOffset, float[] output, int outputOffset, int count);
+
+	public String getName();
+
+	// Returns the vectorized kernels if they are included in the build and the JVM supports them.
+	// Otherwise the scalar kernels are returned which run on every JVM.
+	public static DspKernels getDefault() {
+		return Holder.DEFAULT;
+	}
+
+	static class Holder {
+
+		private static final DspKernels DEFAULT = create();
+
+		private static DspKernels create() {
+			if (!Boolean.parseBoolean(System.getProperty("vts.fft.vector", "true"))) {
+				return new ScalarKernels();
+			}
+
+			try {
+				// Requires Java 17 or newer and the jdk.incubator.vector module
+				// (--add-modules jdk.incubator.vector) and fails with a linkage error otherwise.
+				return (DspKernels) Class.forName(VECTOR_KERNELS_CLASS).getConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError | RuntimeException exception) {
+				return new ScalarKernels();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,136 @@
+package me.yuzu.vts.fft;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import me.yuzu.vts.fft.FftService.FftData;
+
+public class FftDataMailbox {
+
+	// Ring buffer of the newest values. The values from head (inclusive) to tail (exclusive)
+	// are waiting to be taken. Both counters only increase, the slot is the counter modulo the capacity.
+	private final int capacity;
+	private final AtomicReferenceArray<FftData> slots;
+	private final AtomicLong head;
+	private final AtomicLong tail;
+	private final AtomicLong coalesced;
+
+	// The thread that waits for new values, null if nobody is waiting.
+	private volatile Thread waiter;
+
+	// Creates a mailbox that keeps the newest values up to the capacity.
+	// A capacity of one only keeps the latest value.
+	public FftDataMailbox(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.slots = new AtomicReferenceArray<>(this.capacity);
+		this.head = new AtomicLong(0);
+		this.tail = new AtomicLong(0);
+		this.coalesced = new AtomicLong(0);
+		this.waiter = null;
+	}
+
+	// Adds a new value and drops the oldest one if the mailbox is full. Never blocks.
+	// Must only be called by a single thread (the thread of the FFT service).
+	// The mailbox takes over the reference of the caller and releases the values that it drops.
+	public final void offer(FftData fftData) {
+		final long next = tail.get();
+		while (true) {
+			final long first = head.get();
+			if (next - first < capacity) {
+				break;
+			}
+
+			// The mailbox is full so take the oldest value away from the reader. If the reader
+			// has taken it in the meantime then the compare and set fails and there is space now.
+			// Only this thread writes the slots, so the slot still contains the oldest value.
+			final FftData dropped = slots.get((int) (first % capacity));
+			if (head.compareAndSet(first, first + 1)) {
+				slots.compareAndSet((int) (first % capacity), dropped, null);
+				dropped.release();
+				coalesced.incrementAndGet();
+			}
+		}
+
+		// The slot is only published to the reader by the following write of the tail.
+		slots.set((int) (next % capacity), fftData);
+		tail.set(next + 1);
+
+		final Thread thread = waiter;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	// Takes the oldest value or returns null if the mailbox is empty. Never blocks.
+	// The caller has to release the value when it is done with it.
+	public final FftData poll() {
+		while (true) {
+			final long first = head.get();
+			if (first >= tail.get()) {
+				return null;
+			}
+
+			// If the writer dropped this value in the meantime then the head has moved
+			// and the slot might already contain a newer value, so try again.
+			final int slot = (int) (first % capacity);
+			final FftData fftData = slots.get(slot);
+			if (head.compareAndSet(first, first + 1)) {
+				// Release the value for the garbage collector unless it has already been replaced.
+				slots.compareAndSet(slot, fftData, null);
+				return fftData;
+			}
+		}
+	}
+
+	// Takes the oldest value and waits up to the timeout if the mailbox is empty.
+	// Returns null if the timeout has passed or the thread has been interrupted.
+	public final FftData poll(long timeout, TimeUnit unit) {
+		FftData fftData = poll();
+		if (fftData != null) {
+			return fftData;
+		}
+
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waiter = Thread.currentThread();
+		try {
+			while (true) {
+				// Check again after registering as waiter such that no wake up is lost.
+				fftData = poll();
+				if (fftData != null) {
+					return fftData;
+				}
+
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				LockSupport.parkNanos(this, remaining);
+			}
+		} finally {
+			waiter = null;
+		}
+	}
+
+	public final boolean isEmpty() {
+		return head.get() >= tail.get();
+	}
+
+	public final void clear() {
+		FftData fftData;
+		while ((fftData = poll()) != null) {
+			fftData.release();
+		}
+	}
+
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	// Returns how many values have been dropped because a newer value arrived while the mailbox was full.
+	public final long getCoalesced() {
+		return coalesced.get();
+	}
+
+}
@@ -0,0 +1,62 @@
+package me.yuzu.vts.fft;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import me.yuzu.vts.fft.FftService.FftData;
+
+public class FftDataPool {
+
+	private final float startFrequency;
+	private final float endFrequency;
+	private final int channels;
+	private final int buckets;
+
+	// The released data that can be used again. The queue does not create objects when
+	// adding or removing data, which keeps the thread that creates the results free of garbage.
+	private final ArrayBlockingQueue<FftData> available;
+	private final AtomicLong allocated;
+
+	// Creates a pool of data with the same frequency range and buckets. At most the capacity
+	// is kept for reuse, if more data is in use at the same time then additional data is created.
+	public FftDataPool(float startFrequency, float endFrequency, int channels, int buckets, int capacity) {
+		this.startFrequency = startFrequency;
+		this.endFrequency = endFrequency;
+		this.channels = channels;
+		this.buckets = buckets;
+		this.available = new ArrayBlockingQueue<>(Math.max(1, capacity));
+		this.allocated = new AtomicLong(0);
+	}
+
+	// Returns empty data with a single reference that the caller has to release.
+	public final FftData acquire() {
+		final FftData fftData = available.poll();
+		if (fftData == null) {
+			allocated.incrementAndGet();
+			return new FftData(startFrequency, endFrequency, channels, buckets, this);
+		}
+
+		fftData.reset();
+		return fftData;
+	}
+
+	// Called by the data when the last reference has been released.
+	// If the pool is already full then the data is left to the garbage collector.
+	final void recycle(FftData fftData) {
+		available.offer(fftData);
+	}
+
+	public final int getChannels() {
+		return channels;
+	}
+
+	public final int getBuckets() {
+		return buckets;
+	}
+
+	// Returns how much data has been created in total. This stops growing once enough data is in use.
+	public final long getAllocated() {
+		return allocated.get();
+	}
+
+}
@@ -0,0 +1,15 @@
+package me.yuzu.vts.fft;
+
+public interface FftEngine {
+
+	// Transforms the real valued input data and writes the magnitude of the frequency bins
+	// 0 to (input.length / 2 - 1) into the output array.
+	// The input length has to be a power of two and the output has to hold at least
+	// input.length / 2 values. The magnitudes are not normalized.
+	public void magnitudes(double[] input, double[] output);
+
+	// Transforms the real valued input data and writes the complex value of the frequency bins
+	// 0 to (input.length / 2 - 1) into the real and imaginary output arrays.
+	public void transform(double[] input, double[] real, double[] imaginary);
+
+}
@@ -0,0 +1,88 @@
+package me.yuzu.vts.fft;
+
+public class FftScheduler {
+
+	private final int[] intervals;
+	private final int[] phases;
+	private final long[] hopCosts;
+	private final long totalCost;
+
+	// Creates a schedule where each FFT is updated often enough that its window moves by at most
+	// 1 / overlap of its size between two updates. The intervals are powers of two and the FFTs
+	// with the same interval are spread over the hops such that the work per hop is balanced.
+	public FftScheduler(int[] sizes, int hopSize, int overlap) {
+		this.intervals = new int[sizes.length];
+		this.phases = new int[sizes.length];
+
+		int period = 1;
+		long total = 0;
+		for (int index = 0; index < sizes.length; index++) {
+			total += getCost(sizes[index]);
+			final int hops = sizes[index] / Math.max(1, hopSize * overlap);
+			intervals[index] = Math.max(1, Integer.highestOneBit(Math.max(1, hops)));
+			period = Math.max(period, intervals[index]);
+		}
+		this.totalCost = total;
+
+		// Assign the most expensive transformations first to the hop with the least work
+		// (greedy balancing over one period of the longest interval).
+		this.hopCosts = new long[period];
+		final boolean[] assigned = new boolean[sizes.length];
+		for (int step = 0; step < sizes.length; step++) {
+			int next = -1;
+			for (int index = 0; index < sizes.length; index++) {
+				if (!assigned[index] && (next < 0 || getCost(sizes[index]) > getCost(sizes[next]))) {
+					next = index;
+				}
+			}
+			assigned[next] = true;
+
+			final int interval = intervals[next];
+			int bestPhase = 0;
+			long bestLoad = Long.MAX_VALUE;
+			for (int phase = 0; phase < interval; phase++) {
+				long load = 0;
+				for (int hop = phase; hop < period; hop += interval) {
+					load = Math.max(load, hopCosts[hop]);
+				}
+				if (load < bestLoad) {
+					bestLoad = load;
+					bestPhase = phase;
+				}
+			}
+
+			phases[next] = bestPhase;
+			for (int hop = bestPhase; hop < period; hop += interval) {
+				hopCosts[hop] += getCost(sizes[next]);
+			}
+		}
+	}
+
+	// Returns true if the FFT has to be recomputed in this hop. Otherwise the last result can be reused.
+	public final boolean isDue(int index, long hop) {
+		return (hop % intervals[index]) == phases[index];
+	}
+
+	public final int getInterval(int index) {
+		return intervals[index];
+	}
+
+	public final int getPhase(int index) {
+		return phases[index];
+	}
+
+	// Returns the largest work of a single hop relative to computing all FFTs in every hop.
+	public final double getPeakLoad() {
+		long peak = 0;
+		for (long cost : hopCosts) {
+			peak = Math.max(peak, cost);
+		}
+		return (totalCost == 0) ? 1.0d : (double) peak / totalCost;
+	}
+
+	private static final long getCost(int size) {
+		// Cost model of a radix-2 FFT: N * log2(N).
+		return (long) size * Math.max(1, Integer.numberOfTrailingZeros(size));
+	}
+
+}
@@ -2,7 +2,14 @@ package me.yuzu.vts.fft;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
@@ -11,23 +18,31 @@ import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.Mixer;
 import javax.sound.sampled.TargetDataLine;
 
-import org.apache.commons.math.complex.Complex;
-import org.apache.commons.math.transform.FastFourierTransformer;
-
 public class FftService {
 
-	private static enum FftType { SINGLE_FFT, MULTI_FFT /*, SGDFT */ }
-	private static enum WindowType { NONE, HAMMING, NUTTALL }
+	public static enum FftType { SINGLE_FFT, MULTI_FFT, MULTIRATE_FFT, SGDFT, CONSTANT_Q }
+	public static enum WindowType { NONE, HAMMING, HANN, NUTTALL, BLACKMAN_HARRIS }
 	public static enum BucketType { LINEAR, LOGARITHMIC }
 	public static enum OutputType { LINEAR, LOGARITHMIC }
 
-	private static final FftType FFT_TYPE = FftType.MULTI_FFT;
-	private static final WindowType WINDOW_TYPE = WindowType.NUTTALL;
 	private static final int MULTI_FFT_COUNT = (16 - 5); // 2^16 (65536) samples to 2^4 (16) samples
+	// The multi FFT spreads the spectrum of every FFT size over this many frequency steps and averages
+	// the steps of each bucket. The band analyses divide their amplitudes by the bucket width in the
+	// same steps, such that a tone has about the same level in every analysis mode.
+	private static final double MULTI_FFT_FREQUENCY_STEPS = 65536.0d;
+	private static final int MULTIRATE_FFT_SIZE = 256; // Samples of the FFT for each octave
+	private static final int MULTIRATE_FFT_MAX_OCTAVES = 12;
+	private static final int MIN_HOP_SIZE = 128;
+	private static final int MAX_HOP_SIZE = 4096;
+	private static final int LOW_LATENCY_HOP_SIZE = 256;
+	private static final int LOW_LATENCY_MAX_FFT_SIZE = 8192; // Longest window of about 170 to 190 ms
+	private static final int FFT_DATA_POOL_SIZE = 16;
+	private static final int CAPTURE_RING_SIZE = 131072; // About 3 seconds at 44100 Hz, twice the longest FFT
 
 	private final List<StatusListener> statusListener;
 	private final List<DeviceInfoUpdateListener> deviceListener;
 	private final List<FftDataListener> fftListener;
+	private final DspKernels kernels;
 
 	private final Object devicesLock;
 	private final List<Mixer> mixers;
@@ -38,12 +53,14 @@ public class FftService {
 	private volatile DeviceInfo connectedDevice;
 	private volatile Thread connectionThread;
 	private volatile IOException connectionError;
-	private volatile TargetDataLine connectionDataLine;
+	private volatile AudioSource connectionSource;
+	private volatile SampleRing captureRing;
 
 	public FftService() {
 		this.statusListener = new ArrayList<>();
 		this.deviceListener = new ArrayList<>();
 		this.fftListener = new ArrayList<>();
+		this.kernels = DspKernels.getDefault();
 
 		this.devicesLock = new Object();
 		this.mixers = new ArrayList<>();
@@ -54,7 +71,7 @@ public class FftService {
 		this.connectedDevice = null;
 		this.connectionThread = null;
 		this.connectionError = null;
-		this.connectionDataLine = null;
+		this.connectionSource = null;
 	}
 
 	public final void searchAudioDevices() {
@@ -82,8 +99,8 @@ public class FftService {
 				}
 
 				// Find mixers that we can actually use.
-				final AudioFormat[] monoAudioFormats = createSupportedAudioFormats(1);
-				final AudioFormat[] stereoAudioFormats = createSupportedAudioFormats(2);
+				final AudioFormat[] monoAudioFormats = MixerAudioSource.createSupportedAudioFormats(1);
+				final AudioFormat[] stereoAudioFormats = MixerAudioSource.createSupportedAudioFormats(2);
 
 				boolean supported = false;
 				for (final AudioFormat audioFormat : monoAudioFormats) {
@@ -129,7 +146,29 @@ public class FftService {
 		return connectionStatus;
 	}
 
+	// Returns how often the analysis could not keep up with the audio device and skipped samples.
+	public final long getCaptureOverruns() {
+		final SampleRing ring = captureRing;
+		return (ring == null) ? 0 : ring.getOverruns();
+	}
+
+	// Returns how often the analysis waited for the audio device for more than two windows.
+	public final long getCaptureUnderruns() {
+		final SampleRing ring = captureRing;
+		return (ring == null) ? 0 : ring.getUnderruns();
+	}
+
 	public final void start(DeviceInfo device, Settings settings) throws IOException {
+		start(new MixerAudioSource(device.getMixer()), device, settings);
+	}
+
+	// Analyzes the audio of any source instead of an audio device, for example a WAV file.
+	// The service disconnects by itself when the source has no more data.
+	public final void start(AudioSource source, Settings settings) throws IOException {
+		start(source, null, settings);
+	}
+
+	private final void start(AudioSource source, DeviceInfo device, Settings settings) throws IOException {
 		synchronized (connectionLock) {
 			// Finish old connection attempt that might be in progress.
 			if (connectionStatus == Status.Disconnecting) {
@@ -142,7 +181,7 @@ public class FftService {
 
 			// Start a new connection attempt.
 			setConnectionStatus(Status.Connecting);
-			connectionThread = new Thread(() -> run(device, settings));
+			connectionThread = new Thread(() -> run(source, device, settings));
 			connectionThread.start();
 			waitWhileConnectionStatusIs(Status.Connecting);
 
@@ -163,8 +202,8 @@ public class FftService {
 				// Signal the other thread to disconnect.
 				setConnectionStatus(Status.Disconnecting);
 				connectionThread.interrupt();
-				if (connectionDataLine != null) {
-					connectionDataLine.close();
+				if (connectionSource != null) {
+					connectionSource.stop();
 				}
 				waitWhileConnectionStatusIs(Status.Disconnecting);
 			}
@@ -187,49 +226,38 @@ public class FftService {
 		}
 	}
 
-	private final void run(DeviceInfo deviceInfo, Settings settings) {
+	private final void run(AudioSource source, DeviceInfo deviceInfo, Settings settings) {
 		IOException error = null;
+		ForkJoinPool analysisPool = null;
+		Thread captureThread = null;
 		try {
 			final int buckets = settings.fftBuckets;
 			final int channels = settings.stereo ? 2 : 1;
-			final AudioFormat[] audioFormats = createSupportedAudioFormats(channels);
-
-			// Find the correct options to open this audio device.
-			TargetDataLine targetDataLine = null;
-			for (final AudioFormat audioFormat : audioFormats) {
-				final DataLine.Info lineInfo = new DataLine.Info(TargetDataLine.class, audioFormat);
-				if (!deviceInfo.getMixer().isLineSupported(lineInfo)) {
-					continue;
-				}
 
-				try {
-					targetDataLine = (TargetDataLine) AudioSystem.getTargetDataLine(audioFormat, deviceInfo.getMixer().getMixerInfo());
-					targetDataLine.open(audioFormat, (int) (audioFormat.getChannels() * audioFormat.getFrameRate() * 0.1)); // 100 ms buffer
-				} catch (IllegalArgumentException illegalArgumentException) {
-					continue;
-				}
-				break;
-			}
+			// The window size is the data that is read from the audio stream in each loop
+			// and with that the time between two outputs. The low latency preset uses a small
+			// window size and drops the FFTs with the longest windows which react the slowest.
+			final boolean lowLatency = settings.lowLatency;
+			final int windowSize = lowLatency ? LOW_LATENCY_HOP_SIZE : Math.max(MIN_HOP_SIZE, Math.min(settings.hopSize, MAX_HOP_SIZE));
 
-			// If the target data line is null then we were not able to open it.
-			// Fail the connection in this case and set the error message accordingly.
-			if (targetDataLine == null) {
+			// Open the source with a buffer of at least two windows such that a large window can be read
+			// while the next one is recorded. Fail the connection if the source cannot be opened.
+			try {
+				source.open(channels, 2 * windowSize);
+			} catch (IOException exception) {
 				synchronized (connectionLock) {
 					// Check if the connection attempt was already cancelled.
-					// Only if we still want to start then we change the status to started.
-					// Otherwise we will drop through the loop below and set the status
-					// immediately to idle.
+					// Only if we still want to start then we report the error.
 					if (connectionStatus == Status.Connecting) {
-						error = new IOException("Could not open the device in any supported audio format!");
+						error = exception;
 					}
 
 					return;
 				}
 			}
 
-			// We opened the target data line and so it's now time to notify the other
+			// We opened the source and so it's now time to notify the other
 			// thread of the connection change.
-			targetDataLine.start();
 			synchronized (connectionLock) {
 				// Check if the connection attempt was already cancelled.
 				// Only if we still want to start then we change the status to started.
@@ -237,7 +265,7 @@ public class FftService {
 				// immediately to idle.
 				if (connectionStatus == Status.Connecting) {
 					connectedDevice = deviceInfo;
-					connectionDataLine = targetDataLine;
+					connectionSource = source;
 					connectionError = null;
 					setConnectionStatus(Status.Connected);
 					connectionLock.notifyAll();
@@ -248,103 +276,322 @@ public class FftService {
 			final int frequencyStart = settings.frequencyStart;
 			final int frequencyEnd = settings.frequencyEnd;
 			final BucketType bucketType = settings.bucketType;
-			final AudioFormat audioFormat = targetDataLine.getFormat();
+			// Unknown names in the settings file are read as null, so fall back to the default analysis.
+			final FftType fftType = (settings.fftType != null) ? settings.fftType : FftType.MULTI_FFT;
+			// The window can be changed while the analysis runs, so an unknown window is replaced in the
+			// settings once instead of being checked on every hop.
+			if (settings.windowType == null) { settings.windowType = WindowType.NUTTALL; }
+			System.out.println(String.format("Using %s DSP kernels", kernels.getName()));
+			final AudioFormat audioFormat = source.getFormat();
 			final int bytesPerFrame = audioFormat.getFrameSize();
 			final float frameRate = audioFormat.getFrameRate();
 
 			// Data size has to be a power of two for the FFT to work.
-			final float[][] fftInputData = new float[channels][];
+			// The capture thread writes the samples into a ring that is twice as large, such that the
+			// analysis can read the longest FFT window while the next samples are recorded.
+			final int fftInputDataSize = 65536; // Can hold at least 22100 * 2 samples for full spectrum
+			final SampleRing ring = new SampleRing(channels, CAPTURE_RING_SIZE);
+			final float[][] fftInputData = ring.getSamples();
 			final float[][] peaks = new float[channels][];
 			for (int channel = 0; channel < channels; channel++) {
-				fftInputData[channel] = new float[65536];
 				peaks[channel] = new float[buckets];
 			}
+			captureRing = ring;
+
+			// The FFTs are at most as long as the maximum size (all of the input data without low latency).
+			final int fftMaxSize = lowLatency ? LOW_LATENCY_MAX_FFT_SIZE : fftInputDataSize;
+			final int fftMultiCount = MULTI_FFT_COUNT - Integer.numberOfTrailingZeros(fftInputDataSize / fftMaxSize);
 
 			// Create a lot of data structures to store the audio data.
 			final double[][] fftSingleWindowedData = new double[channels][];
+			final double[][] fftSingleMagnitudes = new double[channels][];
 			final int[] fftSingleFrequencyRange = new int[2];
 			final double[][][] fftMultiWindowedData = new double[channels][][];
-			final int[][] fftMultiFrequencyRanges = new int[MULTI_FFT_COUNT][];
-			//final int[] sgdftFrequencies = new int[buckets];
-			//final double[][] sgdftResults = new double[channels][];
-			//final double[][] sgdftResultsDelayed = new double[channels][];
-
-			final int fftInputDataSize = 65536; // Can hold at least 22100 * 2 samples for full spectrum
-			switch (FFT_TYPE) {
+			final double[][][] fftMultiMagnitudes = new double[channels][][];
+			final int[][] fftMultiFrequencyRanges = new int[fftMultiCount][];
+			FftScheduler fftMultiScheduler = null;
+			final RealFftEngine[] fftMultiEngines = new RealFftEngine[channels];
+			final double[][] fftMultiWindows = new double[fftMultiCount][];
+			final int[] fftMultiUnitChannels = new int[channels * fftMultiCount];
+			final int[] fftMultiUnitSizes = new int[channels * fftMultiCount];
+			final int[] fftMultiUnitStarts = new int[channels * fftMultiCount];
+			final OctavePyramid[] multirateOctaves = new OctavePyramid[channels];
+			final double[][] multirateWindowedData = new double[channels][];
+			final double[][][] multirateMagnitudes = new double[channels][][];
+			final SlidingDftEngine[] sgdftEngines = new SlidingDftEngine[channels];
+			final float[] bandScales = new float[buckets];
+			final ConstantQEngine[] constantQEngines = new ConstantQEngine[channels];
+			final double[][] constantQFrames = new double[channels][];
+
+			BucketMap fftBucketMap = null;
+			final RealFftEngine fft = new RealFftEngine();
+			switch (fftType) {
 			case SINGLE_FFT:
-				fftSingleFrequencyRange[0] = 1;
+				// A shorter FFT has wider frequency bins which start at a higher frequency.
+				fftSingleFrequencyRange[0] = fftInputDataSize / fftMaxSize;
 				fftSingleFrequencyRange[1] = fftInputDataSize / 2;
 				for (int channel = 0; channel < channels; channel++) {
-					fftSingleWindowedData[channel] = new double[fftInputDataSize];
+					fftSingleWindowedData[channel] = new double[fftMaxSize];
+					fftSingleMagnitudes[channel] = new double[fftMaxSize / 2];
 				}
+				fft.prepare(fftMaxSize);
+
+				// The single FFT always sorts the frequencies linearly into the buckets.
+				fftBucketMap = BucketMap.createForFrequencies(BucketType.LINEAR, buckets, frequencyStart, frequencyEnd,
+						new int[][] { fftSingleFrequencyRange });
 
 				System.out.println(String.format("1. FFT with %d samples for frequency %d Hz to %d Hz",
 						fftSingleWindowedData[0].length, fftSingleFrequencyRange[0], fftSingleFrequencyRange[1]));
 				break;
 
 			case MULTI_FFT:
-				for (int size = 0; size < MULTI_FFT_COUNT; size++) {
+				// The FFTs that are longer than the maximum size are skipped in the low latency preset.
+				for (int size = 0; size < fftMultiCount; size++) {
 					fftMultiFrequencyRanges[size] = new int[] {
-							(int) Math.pow(2.0d, size), // Start frequency
+							(int) Math.pow(2.0d, size) * (fftInputDataSize / fftMaxSize), // Start frequency
 							fftInputDataSize // End frequency
 						};
 				}
 
 				for (int channel = 0; channel < channels; channel++) {
-					fftMultiWindowedData[channel] = new double[MULTI_FFT_COUNT][];
-					for (int size = 0; size < MULTI_FFT_COUNT; size++) {
+					fftMultiWindowedData[channel] = new double[fftMultiCount][];
+					fftMultiMagnitudes[channel] = new double[fftMultiCount][];
+					for (int size = 0; size < fftMultiCount; size++) {
 						// Can hold at least 22100 * 2 / 2^(divider_max-divider) samples to calculate each sub-spectrum
-						fftMultiWindowedData[channel][size] = new double[fftInputDataSize / (int) Math.pow(2.0d, size)];
+						fftMultiWindowedData[channel][size] = new double[fftMaxSize / (int) Math.pow(2.0d, size)];
+						fftMultiMagnitudes[channel][size] = new double[fftMultiWindowedData[channel][size].length / 2];
 					}
 				}
+				// Each channel has its own FFT engine and every FFT size has its own buffers in the engine.
+				// This way each (channel, size) pair can be computed independently in parallel.
+				for (int channel = 0; channel < channels; channel++) {
+					fftMultiEngines[channel] = new RealFftEngine();
+					for (int size = 0; size < fftMultiCount; size++) {
+						fftMultiEngines[channel].prepare(fftMultiWindowedData[channel][size].length);
+					}
+				}
+				if (settings.parallelAnalysis) {
+					analysisPool = new ForkJoinPool(Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), channels * fftMultiCount)));
+					System.out.println(String.format("Parallel FFT analysis with %d threads", analysisPool.getParallelism()));
+				}
+
+				// Precompute which frequency bins of each FFT size are summed up into which bucket.
+				fftBucketMap = BucketMap.createForFrequencies(bucketType, buckets, frequencyStart, frequencyEnd, fftMultiFrequencyRanges);
+
+				// The large FFTs barely change between two windows and are therefore only updated
+				// every few windows. Their last result is reused in the windows in between.
+				final int[] fftMultiSizes = new int[fftMultiCount];
+				for (int size = 0; size < fftMultiCount; size++) {
+					fftMultiSizes[size] = fftMultiWindowedData[0][size].length;
+				}
+				fftMultiScheduler = new FftScheduler(fftMultiSizes, windowSize, Math.max(1, settings.fftUpdateOverlap));
 
 				// Frequency resolution is inversely proportional to frequency.
-				for (int size = 0; size < MULTI_FFT_COUNT; size++) {
-					System.out.println(String.format("%d. FFT with %d samples for frequency %d Hz to %d Hz",
-							size + 1, fftMultiWindowedData[0][size].length, fftMultiFrequencyRanges[size][0], fftMultiFrequencyRanges[size][1]));
+				for (int size = 0; size < fftMultiCount; size++) {
+					System.out.println(String.format("%d. FFT with %d samples for frequency %d Hz to %d Hz every %d windows (offset %d)",
+							size + 1, fftMultiWindowedData[0][size].length, fftMultiFrequencyRanges[size][0], fftMultiFrequencyRanges[size][1],
+							fftMultiScheduler.getInterval(size), fftMultiScheduler.getPhase(size)));
+				}
+				System.out.println(String.format("Peak FFT work per window is %.1f%% of updating all FFTs", fftMultiScheduler.getPeakLoad() * 100.0d));
+				break;
+
+			case MULTIRATE_FFT:
+			{
+				// Add octaves until the lower end of the lowest octave is below the start frequency.
+				// Octave 0 analyzes the input directly and each following octave analyzes the input
+				// decimated by two compared to the octave before.
+				int octaves = 1;
+				while (octaves < MULTIRATE_FFT_MAX_OCTAVES && frameRate / Math.pow(2.0d, octaves - 1) / 8.0d > frequencyStart) {
+					octaves++;
+				}
+
+				// Each octave only covers the band between 1/8 and 1/4 of its sample rate such that
+				// the band is far away from the transition band of the decimation filter.
+				// The first octave covers everything up to the Nyquist frequency and the last one
+				// everything down to 0 Hz.
+				final double[] binWidths = new double[octaves];
+				final int[] binCounts = new int[octaves];
+				final double[][] bands = new double[octaves][];
+				final float[] scales = new float[octaves];
+				for (int octave = 0; octave < octaves; octave++) {
+					final double octaveRate = frameRate / Math.pow(2.0d, octave);
+					binWidths[octave] = octaveRate / MULTIRATE_FFT_SIZE;
+					binCounts[octave] = MULTIRATE_FFT_SIZE / 2;
+					bands[octave] = new double[] {
+							(octave == octaves - 1) ? 0.0d : octaveRate / 8.0d,
+							(octave == 0) ? octaveRate / 2.0d : octaveRate / 4.0d
+						};
+
+					// Scale the magnitudes to the ones of a FFT with the same duration at the full rate.
+					scales[octave] = (float) Math.pow(2.0d, octave);
+				}
+
+				for (int channel = 0; channel < channels; channel++) {
+					multirateOctaves[channel] = new OctavePyramid(octaves, MULTIRATE_FFT_SIZE);
+					multirateWindowedData[channel] = new double[MULTIRATE_FFT_SIZE];
+					multirateMagnitudes[channel] = new double[octaves][MULTIRATE_FFT_SIZE / 2];
+				}
+				fft.prepare(MULTIRATE_FFT_SIZE);
+
+				fftBucketMap = BucketMap.createForBins(bucketType, buckets, frequencyStart, frequencyEnd, binWidths, binCounts, bands, scales);
+
+				for (int octave = 0; octave < octaves; octave++) {
+					System.out.println(String.format("%d. FFT with %d samples at %.1f Hz for frequency %.2f Hz to %.2f Hz",
+							octave + 1, MULTIRATE_FFT_SIZE, frameRate / Math.pow(2.0d, octave), bands[octave][0], bands[octave][1]));
 				}
 				break;
+			}
 
-			/*
 			case SGDFT:
-				// Initialize filters for buckets
+			{
+				// Initialize one resonator for the center frequency of each bucket.
+				// The window length of each resonator matches the bandwidth of its bucket.
+				final double[] centerFrequencies = new double[buckets];
+				final double[] bandwidths = new double[buckets];
 				for (int bucket = 0; bucket < buckets; bucket++) {
-					sgdftFrequencies[bucket] = getFrequencyForBucket(bucketType, buckets, bucket, frequencyStart, frequencyEnd);
+					centerFrequencies[bucket] = BucketMap.getCenterFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket);
+					bandwidths[bucket] = BucketMap.getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket + 1)
+							- BucketMap.getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket);
 				}
 				for (int channel = 0; channel < channels; channel++) {
-					sgdftResults[channel] = new double[buckets];
-					sgdftResultsDelayed[channel] = new double[buckets];
+					sgdftEngines[channel] = new SlidingDftEngine(frameRate, centerFrequencies, bandwidths, fftMaxSize / 2);
+				}
+
+				// The resonators measure the amplitude in their band. The multi FFT averages the spectrum over
+				// the frequencies of a bucket instead, so the amplitude is spread over the bucket width the same way.
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					bandScales[bucket] = (float) (MULTI_FFT_FREQUENCY_STEPS / bandwidths[bucket]);
+				}
+
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					System.out.println(String.format("%d. SGDFT with %d samples for frequency %.2f Hz",
+							bucket + 1, sgdftEngines[0].getLength(bucket), centerFrequencies[bucket]));
 				}
 				break;
-			*/
+			}
+
+			case CONSTANT_Q:
+			{
+				// Initialize the spectral kernels for the log-spaced (or linear) buckets.
+				// The kernel of each bucket is as long as required to resolve the bandwidth of the bucket.
+				final double[] centerFrequencies = new double[buckets];
+				final double[] bandwidths = new double[buckets];
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					centerFrequencies[bucket] = BucketMap.getCenterFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket);
+					bandwidths[bucket] = BucketMap.getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket + 1)
+							- BucketMap.getFrequencyForBucket(bucketType, buckets, frequencyStart, frequencyEnd, bucket);
+				}
+				for (int channel = 0; channel < channels; channel++) {
+					constantQEngines[channel] = new ConstantQEngine(fft, frameRate, centerFrequencies, bandwidths, fftMaxSize / 2);
+					constantQFrames[channel] = new double[constantQEngines[channel].getSize()];
+				}
+
+				// The kernels measure the amplitude in their band like the resonators of the SGDFT.
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					bandScales[bucket] = (float) (MULTI_FFT_FREQUENCY_STEPS / bandwidths[bucket]);
+				}
+
+				System.out.println(String.format("1. FFT with %d samples for %d constant Q buckets with %d kernel values",
+						constantQEngines[0].getSize(), buckets, constantQEngines[0].getKernelEntries()));
+				for (int bucket = 0; bucket < buckets; bucket++) {
+					System.out.println(String.format("%d. Constant Q kernel with %d samples for frequency %.2f Hz",
+							bucket + 1, constantQEngines[0].getLength(bucket), centerFrequencies[bucket]));
+				}
+				break;
+			}
 
 			default:
 				throw new IllegalArgumentException("Unsupported FFT type");
 
 			}
 
-			// The window size is the data that is read from the audio stream
-			// in each loop.
-			final int windowSize = 1024;
-			final FastFourierTransformer fft = new FastFourierTransformer();
-			final byte[] buffer = new byte[windowSize * bytesPerFrame];
+			final WindowTables windowTables = new WindowTables();
+
+			// The results are written into frames from a pool such that the loop does not create
+			// any objects. The frames return to the pool when the last listener released them.
+			final FftDataPool fftDataPool = new FftDataPool(frequencyStart, frequencyEnd, channels, buckets, FFT_DATA_POOL_SIZE);
+
+			long fftInputSequence = 0;
+			long fftWindowCount = 0;
+
+			// Windows and transforms a single FFT of the multi FFT analysis.
+			// Everything that is shared between the work units is only read.
+			final IntConsumer fftMultiUnit = unit -> {
+				final int channel = fftMultiUnitChannels[unit];
+				final int size = fftMultiUnitSizes[unit];
+				copyNthWindowedSample(fftInputData[channel], fftMultiWindowedData[channel][size], fftMultiUnitStarts[unit], fftMultiWindows[size]);
+				fftMultiEngines[channel].magnitudes(fftMultiWindowedData[channel][size], fftMultiMagnitudes[channel][size]);
+			};
+			final long sampleDelay = (long) (1.0d / frameRate * windowSize * 1000000000.0d);
+
+			final float peakDecay = getPeakDecay(frameRate, windowSize, settings.peakHalfLife);
+			System.out.println(String.format("Window of %d samples (%.1f ms) with a peak half-life of %d ms%s",
+					windowSize, sampleDelay / 1000000.0d, Math.max(1, settings.peakHalfLife), lowLatency ? " (low latency)" : ""));
+
+			// The capture thread only reads the audio source and converts the samples into the ring.
+			// It never waits for the analysis if the source is recorded in real time, so a slow analysis
+			// cannot make the audio device overflow. Other sources wait instead of overwriting samples
+			// such that every sample of a file is analyzed.
+			final boolean realTime = source.isRealTime();
+			final PcmDecoder pcmDecoder = PcmDecoder.create(audioFormat, kernels);
+			System.out.println(String.format("Reading %s from %s", audioFormat, source.getName()));
+			captureThread = new Thread(() -> {
+				final byte[] buffer = new byte[windowSize * bytesPerFrame];
+				final long writeLimit = ring.getCapacity() - fftInputDataSize - windowSize;
+				while (!Thread.currentThread().isInterrupted() && connectionStatus != Status.Disconnecting) {
+					while (!realTime && ring.getWritten() + windowSize - ring.getRead() > writeLimit
+							&& !Thread.currentThread().isInterrupted()) {
+						LockSupport.parkNanos(this, 100000L);
+					}
+
+					// Read signed PCM frames and convert to float values. The read returns less
+					// data when the source has been stopped or has no more data.
+					if (source.read(buffer, 0, buffer.length) < buffer.length) {
+						break;
+					}
+					pcmDecoder.decode(buffer, windowSize, fftInputData, ring.getWriteIndex());
 
-			int fftInputDataOffset = 0;
-			long lastSampleTime = System.currentTimeMillis();
-			long sampleDelay = (long) (1.0d / frameRate * windowSize * 1000.0d);
+					// The newest sample that was read has been recorded before the samples that are still
+					// waiting in the buffer of the source.
+					ring.publish(windowSize, System.nanoTime() - (long) (source.available() / bytesPerFrame / frameRate * 1000000000.0d));
+				}
+			}, "Audio capture");
+			captureThread.setDaemon(true);
+			captureThread.start();
 
-			// This is the main loop that reads and processes the audio data.
+			// This is the main loop that processes the audio data.
 			// The audio data is analyzed by appending it to an audio buffer which is
 			// used in a sliding window like fashion.
 			while (!Thread.interrupted() && connectionStatus != Status.Disconnecting) {
-				// Read signed PCM frames and convert to float values.
-				targetDataLine.read(buffer, 0, buffer.length);
-				convertSampleDataToFloat(audioFormat, buffer, fftInputData, fftInputDataOffset);
+				// Wait until the capture thread has recorded the next window. The wait is limited
+				// to notice a disconnect or an audio device that stopped delivering samples.
+				final long waitStart = System.nanoTime();
+				if (!ring.await(fftInputSequence + windowSize, 100, TimeUnit.MILLISECONDS)) {
+					if (!captureThread.isAlive()) {
+						break;
+					}
+					continue;
+				}
+				if (System.nanoTime() - waitStart > 2 * sampleDelay) {
+					ring.countUnderrun();
+				}
+
+				// If the analysis fell so far behind that the capture thread is about to overwrite
+				// the samples of the longest window then skip to the newest samples.
+				final long written = ring.getWritten();
+				if (written - fftInputSequence > ring.getCapacity() - fftInputDataSize - windowSize) {
+					ring.countOverrun();
+					fftInputSequence = written - windowSize;
+				}
 
+				final int fftInputDataOffset = ring.getIndex(fftInputSequence);
 				final int fftInputDataEnd = fftInputDataOffset + windowSize;
-				final FftData fftData = new FftData(frequencyStart, frequencyEnd, channels, buckets);
+				final long captureTime = ring.getCaptureTime(fftInputSequence + windowSize, frameRate);
+				final WindowType windowType = settings.windowType;
+				final FftData fftData = fftDataPool.acquire();
+				fftData.captureTime = captureTime;
 
-				switch (FFT_TYPE) {
+				switch (fftType) {
 				case SINGLE_FFT:
 					// Using a single Fast Fourier Transformation (FFT) results in that
 					// the output value for each frequency bin is averaged over the time window.
@@ -357,20 +604,14 @@ public class FftService {
 						// Apply a window function to the input data such that the border conditions do not introduce
 						// spurious frequencies into the FF transformation.
 						final int fftCopyRange = fftSingleWindowedData[channel].length;
-						copyNthWindowedSample(fftInputData[channel], fftSingleWindowedData[channel], fftInputDataEnd - fftCopyRange);
+						copyNthWindowedSample(fftInputData[channel], fftSingleWindowedData[channel], fftInputDataEnd - fftCopyRange,
+								windowTables.get(windowType, fftCopyRange));
 
-						final Complex[] fftOutput = fft.transform(fftSingleWindowedData[channel]);
+						final double[] fftOutput = fftSingleMagnitudes[channel];
+						fft.magnitudes(fftSingleWindowedData[channel], fftOutput);
 
 						// Now sort the output data into the frequency buckets.
-						for (int frequency = frequencyStart; frequency < frequencyEnd; frequency++) {
-							if (frequency < fftSingleFrequencyRange[0] || frequency >= fftSingleFrequencyRange[1]) {
-								continue;
-							}
-
-							final int bucket = (frequency - frequencyStart) * buckets / (frequencyEnd - frequencyStart);
-							fftData.level[channel][bucket] += fftOutput[(frequency - fftSingleFrequencyRange[0]) / fftSingleFrequencyRange[0]].abs();
-							fftData.samples[channel][bucket]++;
-						}
+						fftBucketMap.accumulate(0, fftOutput, fftData.level, channel * buckets);
 					}
 					break;
 
@@ -379,130 +620,170 @@ public class FftService {
 					// for higher frequencies. This costs additional computation time and with that is
 					// a tradeoff between quality and computation time.
 
-					// Apply the Fast Fourier transformation to get the frequency data.
+					// Apply a window function to the input data such that the border conditions do not introduce
+					// spurious frequencies into the FF transformation.
+					// The window tables are looked up here such that the work units only read them.
+					for (int size = 0; size < fftMultiCount; size++) {
+						fftMultiWindows[size] = windowTables.get(windowType, fftMultiWindowedData[0][size].length);
+					}
+
+					// Only recompute the FFTs that are scheduled in this window.
+					int fftMultiUnits = 0;
 					for (int channel = 0; channel < channels; channel++) {
-						for (int size = 0; size < MULTI_FFT_COUNT; size++) {
-							// Apply a window function to the input data such that the border conditions do not introduce
-							// spurious frequencies into the FF transformation.
-							final int fftCopyRange = fftMultiWindowedData[channel][size].length;
-							copyNthWindowedSample(fftInputData[channel], fftMultiWindowedData[channel][size], fftInputDataEnd - fftCopyRange);
-
-							final Complex[] fftOutput = fft.transform(fftMultiWindowedData[channel][size]);
-							for (int frequency = frequencyStart; frequency < frequencyEnd; frequency++) {
-								if (frequency < fftMultiFrequencyRanges[size][0] || frequency >= fftMultiFrequencyRanges[size][1]) {
-									continue;
-								}
-
-								// Normalize the frequency spectrum that is divided over multiple buckets.
-								final int bucket = getBucketForFrequency(bucketType, buckets, frequencyStart, frequencyEnd, frequency);
-								fftData.level[channel][bucket] += fftOutput[(frequency - fftMultiFrequencyRanges[size][0]) / fftMultiFrequencyRanges[size][0]].abs();
-								fftData.samples[channel][bucket]++;
+						for (int size = 0; size < fftMultiCount; size++) {
+							if (fftMultiScheduler.isDue(size, fftWindowCount)) {
+								fftMultiUnitChannels[fftMultiUnits] = channel;
+								fftMultiUnitSizes[fftMultiUnits] = size;
+								fftMultiUnitStarts[fftMultiUnits] = fftInputDataEnd - fftMultiWindowedData[channel][size].length;
+								fftMultiUnits++;
 							}
 						}
 					}
+
+					// Apply the Fast Fourier transformation to get the frequency data.
+					if (analysisPool != null && fftMultiUnits > 1) {
+						analysisPool.invoke(new AnalysisTask(fftMultiUnit, 0, fftMultiUnits));
+					} else {
+						for (int unit = 0; unit < fftMultiUnits; unit++) {
+							fftMultiUnit.accept(unit);
+						}
+					}
+
+					// Normalize the frequency spectrum that is divided over multiple buckets.
+					// This is always done in the same order such that the parallel and the sequential
+					// analysis produce exactly the same sums.
+					for (int channel = 0; channel < channels; channel++) {
+						for (int size = 0; size < fftMultiCount; size++) {
+							fftBucketMap.accumulate(size, fftMultiMagnitudes[channel][size], fftData.level, channel * buckets);
+						}
+					}
 					break;
 
-				/*
-				case SGDFT:
-					// Warning: This code is not functional at all.
-					// TODO: Find out why this does not work at all.
+				case MULTIRATE_FFT:
+					// The multirate FFT feeds the input into a pyramid of octaves where each octave
+					// has half the sample rate of the octave before. Every octave is analyzed with a
+					// small FFT of the same size which results in the same frequency resolution as
+					// a large FFT for the low frequencies with only a fraction of the computations.
+					for (int channel = 0; channel < channels; channel++) {
+						final OctavePyramid octaves = multirateOctaves[channel];
+						octaves.process(fftInputData[channel], fftInputDataOffset, windowSize);
+
+						final double[] window = windowTables.get(windowType, MULTIRATE_FFT_SIZE);
+						for (int octave = 0; octave < octaves.getOctaves(); octave++) {
+							octaves.copyWindowed(octave, window, multirateWindowedData[channel]);
+
+							final double[] fftOutput = multirateMagnitudes[channel][octave];
+							fft.magnitudes(multirateWindowedData[channel], fftOutput);
+							fftBucketMap.accumulate(octave, fftOutput, fftData.level, channel * buckets);
+						}
+					}
+					break;
 
+				case SGDFT:
 					// The Sliding Goertzel Discrete Fourier Transformation (SGDFT) can be used
 					// to do a Fourier transformation on streaming input data.
 					// It has the benefit of being able to be applied to a sliding window which
 					// means that not all data has to be reprocessed all the time.
-					// Instead only the new data is processed and which reduces the total
-					// computation time in some cases.
+					// Instead only the new data is processed for the center frequency of each bucket
+					// which costs O(buckets) per sample instead of multiple FFTs per window.
 					// See the following resources for more information about applications:
 					// - https://ieeexplore.ieee.org/document/4488619
 					// - https://ieeexplore.ieee.org/document/9358492
 					// - https://www.intechopen.com/chapters/54042
-					//
-					// In theory this should be faster, but I'm too stupid to write the code correctly. (-'_'-)
-
-					final double r = 0.999;
 					for (int channel = 0; channel < channels; channel++) {
+						sgdftEngines[channel].process(fftInputData[channel], fftInputDataOffset, windowSize);
+
 						for (int bucket = 0; bucket < buckets; bucket++) {
-							for (int offset = 0; offset < windowSize; offset++) {
-								final int N = (int) (frameRate / sgdftFrequencies[bucket]);
-								final double vNminus1 = sgdftResults[channel][bucket];
-								final double vNminus2 = sgdftResultsDelayed[channel][bucket];
-								final double xN = fftInputData[channel][fftInputDataOffset + offset];
-								final double XNminusN = fftInputData[channel][(fftInputDataOffset + offset - N + fftInputData[channel].length) % fftInputData[channel].length];
-								sgdftResultsDelayed[channel][bucket] = sgdftResults[channel][bucket];
-								sgdftResults[channel][bucket] = 2.0d * r * Math.cos(2.0d * Math.PI / N) * vNminus1 - r * r * vNminus2
-										+ xN - Math.pow(r, N) * XNminusN;
-							}
+							fftData.level[channel * buckets + bucket] = (float) sgdftEngines[channel].getMagnitude(bucket) * bandScales[bucket];
+							fftData.samples[channel * buckets + bucket] = 1.0f;
+						}
+					}
+					break;
+
+				case CONSTANT_Q:
+					// The constant Q transformation uses a single FFT and then maps the frequency bins with
+					// precomputed spectral kernels to the buckets. Each kernel has a window length that matches
+					// the bandwidth of its bucket and therefore the low frequencies are resolved well while the
+					// high frequencies still react fast. The kernels always use their own Hann window.
+					for (int channel = 0; channel < channels; channel++) {
+						final int fftCopyRange = constantQFrames[channel].length;
+						copyNthWindowedSample(fftInputData[channel], constantQFrames[channel], fftInputDataEnd - fftCopyRange,
+								windowTables.get(WindowType.NONE, fftCopyRange));
 
-							fftData.level[channel][bucket] = (float) (sgdftResults[channel][bucket] - r * sgdftResultsDelayed[channel][bucket]);
-							fftData.samples[channel][bucket]++;
+						constantQEngines[channel].process(constantQFrames[channel]);
+
+						for (int bucket = 0; bucket < buckets; bucket++) {
+							fftData.level[channel * buckets + bucket] = (float) constantQEngines[channel].getMagnitude(bucket) * bandScales[bucket];
+							fftData.samples[channel * buckets + bucket] = 1.0f;
 						}
 					}
 					break;
-					*/
+
 
 				default:
 					throw new IllegalArgumentException("Unsupported FFT type");
 
 				}
 
+				if (fftBucketMap != null) {
+					for (int channel = 0; channel < channels; channel++) {
+						for (int bucket = 0; bucket < buckets; bucket++) {
+							fftData.samples[channel * buckets + bucket] = fftBucketMap.getBucketWeight(bucket);
+						}
+					}
+				}
+
 				final double volume = settings.volume;
 				final double noiseFloor = settings.noiseFloor;
 				final OutputType outputType = settings.outputType;
 				for (int channel = 0; channel < channels; channel++) {
-					for (int bucket = 0; bucket < buckets; bucket++) {
-						fftData.level[channel][bucket] /= (float) fftData.samples[channel][bucket];
-
-						fftData.level[channel][bucket] = Math.max(Math.min(scaleOutput(outputType, volume, noiseFloor, fftData.level[channel][bucket]), 0.99f), 0.0f);
-						fftData.peak[channel][bucket] = Math.max(peaks[channel][bucket] * 0.95f, fftData.level[channel][bucket]);
-						peaks[channel][bucket] = fftData.peak[channel][bucket];
-					}
+					scaleChannel(outputType, volume, noiseFloor, peakDecay, fftData.level, fftData.samples, fftData.peak, channel * buckets, peaks[channel]);
 				}
+				fftData.analysisTime = System.nanoTime();
 
-				// Try to not stream all samples at the same time but create a smooth steady animation
-				// by delaying the samples if they are read too fast.
-				// This can happen since we are reading the input audio data in batches of "windowSize".
-				// Use a loop here since Thread.sleep might wake up without reason before the delay ended.
-				// long totalDelay = 0;
-				while (true) {
-					long delay = (System.currentTimeMillis() - lastSampleTime);
-					// Allow to be slightly faster to account for small delays elsewhere
-					if (delay >= sampleDelay * 0.85) {
-						break;
-					}
-
-					// totalDelay += sampleDelay - delay;
-					try {
-						Thread.sleep(sampleDelay - delay);
-					} catch (InterruptedException e) { }
-				}
-				// System.out.println(String.format("Sample time %03.2f%% (%d ms delayed for realtime)", (0.1f * (System.currentTimeMillis() - lastSampleTime) / (windowSize / frameRate)), totalDelay));
-				lastSampleTime = System.currentTimeMillis();
-
-				// Notify the event listeners about the new FFT data.
+				// Notify the event listeners about the new FFT data. The data is passed on as soon as it
+				// is ready, a steady animation is created by the output scheduler at its own rate.
 				for (FftDataListener listener : fftListener) {
 					if (listener != null) {
 						listener.onFftData(fftData);
 					}
 				}
 
+				// Listeners that keep the data have retained it, otherwise it goes back to the pool.
+				fftData.release();
+
 				// Advance the sliding window.
-				fftInputDataOffset += windowSize;
-				fftInputDataOffset %= fftInputData[0].length;
+				fftInputSequence += windowSize;
+				ring.setRead(fftInputSequence);
+				fftWindowCount++;
 			}
 
-			// We are done so stop everything.
-			targetDataLine.stop();
-			targetDataLine.flush();
-			targetDataLine.close();
-		} catch (LineUnavailableException lineUnavailableException) {
-			error = new IOException("Audio device was not ready to be opened!", lineUnavailableException);
+			// We are done so stop everything. Stopping the source ends the read of the capture thread.
+			captureThread.interrupt();
+			source.stop();
+			try {
+				captureThread.join();
+			} catch (InterruptedException interruptedException) { }
+			source.close();
+
+			if (ring.getOverruns() > 0 || ring.getUnderruns() > 0) {
+				System.out.println(String.format("The analysis skipped samples %d times and waited too long for the audio device %d times",
+						ring.getOverruns(), ring.getUnderruns()));
+			}
 		} finally {
+			if (analysisPool != null) {
+				analysisPool.shutdownNow();
+			}
+			if (captureThread != null) {
+				captureThread.interrupt();
+			}
+
 			// When everything is finished notify the other thread of the change
 			// if that did not already happen.
 			synchronized (connectionLock) {
 				if (connectionStatus != Status.Disconnected) {
 					connectedDevice = null;
+					connectionSource = null;
 					connectionThread = null;
 					connectionError = error;
 					setConnectionStatus(Status.Disconnected);
@@ -512,128 +793,39 @@ public class FftService {
 		}
 	}
 
-	private final void convertSampleDataToFloat(AudioFormat format, byte[] inputData, float[][] outputData, int outputStartIndex) {
-		final int bitsPerSample = format.getSampleSizeInBits();
-		final int channels = format.getChannels();
-
-		int outputOffset = 0;
-		int inputOffset = 0;
-
-		// Converts each audio sample by reading frame by frame and converting all contained channels.
-		while (inputOffset < inputData.length) {
-			final int outputIndex = (outputStartIndex + outputOffset++) % outputData[0].length;
-
-			switch (bitsPerSample) {
-			case 8:
-				// Signed PCM 8 bit little-endian: [sbyte]
-				for (int channel = 0; channel < channels; channel++) {
-					outputData[channel][outputIndex] = (float) (
-							((       ((int) inputData[inputOffset++]) <<  0))
-						) / 128.0f;
-				}
-				break;
-
-			case 16:
-				// Signed PCM 16 bit little-endian: [sbyte][byte]
-				for (int channel = 0; channel < channels; channel++) {
-					outputData[channel][outputIndex] = (float) (
-							((0xFF & ((int) inputData[inputOffset++]) <<  0)) |
-							((       ((int) inputData[inputOffset++]) <<  8))
-						) / (128.0f * 256.0f);
-				}
-				break;
-
-			case 24:
-				// Signed PCM 16 bit little-endian: [sbyte][byte][byte]
-				for (int channel = 0; channel < channels; channel++) {
-					outputData[channel][outputIndex] = (float) (
-							((0xFF & ((int) inputData[inputOffset++]) <<  0)) |
-							((0xFF & ((int) inputData[inputOffset++]) <<  8)) |
-							((       ((int) inputData[inputOffset++]) << 16))
-						) / (128.0f * 256.0f * 256.0f);
-				}
-				break;
-
-			case 32:
-				// Signed PCM 32 bit little-endian: [sbyte][byte][byte][byte]
-				for (int channel = 0; channel < channels; channel++) {
-					outputData[channel][outputIndex] = (float) (
-							((0xFF & ((int) inputData[inputOffset++]) <<  0)) |
-							((0xFF & ((int) inputData[inputOffset++]) <<  8)) |
-							((0xFF & ((int) inputData[inputOffset++]) << 16)) |
-							((       ((int) inputData[inputOffset++]) << 24))
-						) / (128.0f * 256.0f * 256.0f * 256.0f);
-				}
-				break;
-			}
+	private final void copyNthWindowedSample(float[] inputData, double[] outputData, int inputStartIndex, double[] window) {
+		// Copies the input data to the output while applying the precomputed window function.
+		// The range in the ring buffer is split into at most two contiguous parts for the kernels.
+		final int inputStart = ((inputStartIndex % inputData.length) + inputData.length) % inputData.length;
+		final int firstPart = Math.min(outputData.length, inputData.length - inputStart);
+		kernels.window(inputData, inputStart, window, outputData, 0, firstPart);
+		if (firstPart < outputData.length) {
+			kernels.window(inputData, 0, window, outputData, firstPart, outputData.length - firstPart);
 		}
 	}
 
-	private final void copyNthWindowedSample(float[] inputData, double[] outputData, int inputStartIndex) {
-		// Copies the input data to the output while applying the window function.
-		for (int outputIndex = 0; outputIndex < outputData.length; outputIndex++) {
-			final int inputIndex = (inputData.length + inputStartIndex + outputIndex) % inputData.length;
-			outputData[outputIndex] = inputData[inputIndex] * applyWindow(outputIndex, outputData.length);
-		}
+	// Returns the factor the peaks are multiplied with after each window. The peaks fall to half
+	// of their value within the half-life independent of the window size.
+	static final float getPeakDecay(float frameRate, int windowSize, int peakHalfLife) {
+		final long sampleDelay = (long) (1.0d / frameRate * windowSize * 1000000000.0d);
+		return (float) Math.pow(0.5d, (sampleDelay / 1000000.0d) / Math.max(1, peakHalfLife));
 	}
 
-	private final float applyWindow(int sampleFrame, int sampleFrames) {
-		// See https://en.wikipedia.org/wiki/Window_function for more window functions.
-		// The window function fades the input data on the start and end to silent such
-		// that at the borders no step is present which would introduce additional
-		// frequencies into the Fast Fourier Transformation.
-
-		switch (WINDOW_TYPE) {
-		case NONE:
-			return 1.0f;
-
-		case HAMMING:
-			return 0.53836f - 0.46164f * (float) Math.cos(2.0f * Math.PI * sampleFrame / sampleFrames);
-
-		case NUTTALL:
-			return 0.355768f - 0.487396f * (float) Math.cos(2.0f * Math.PI * sampleFrame / sampleFrames)
-					+ 0.144232f * (float) Math.cos(4.0f * Math.PI * sampleFrame / sampleFrames)
-					- 0.012604f * (float) Math.cos(6.0f * Math.PI * sampleFrame / sampleFrames);
-
-		default:
-			throw new IllegalArgumentException("Unsupported window type");
-
+	// Averages the summed up levels of one channel, scales them to the output range and lets the
+	// peaks of the channel decay towards them. The channel starts at the offset in the frame arrays.
+	static final void scaleChannel(OutputType outputType, double volume, double noiseFloor, float peakDecay,
+			float[] levels, float[] samples, float[] outputPeaks, int offset, float[] peaks) {
+		for (int bucket = 0; bucket < peaks.length; bucket++) {
+			final int index = offset + bucket;
+			levels[index] /= samples[index];
+
+			levels[index] = Math.max(Math.min(scaleOutput(outputType, volume, noiseFloor, levels[index]), 0.99f), 0.0f);
+			outputPeaks[index] = Math.max(peaks[bucket] * peakDecay, levels[index]);
+			peaks[bucket] = outputPeaks[index];
 		}
 	}
 
-	private final int getBucketForFrequency(BucketType bucketType, int buckets, int frequencyStart, int frequencyEnd, int frequency) {
-		if (bucketType == null) { bucketType = BucketType.LINEAR; }
-
-		switch (bucketType) {
-		case LINEAR:
-			return buckets * (frequency - frequencyStart) / (frequencyEnd - frequencyStart);
-
-		case LOGARITHMIC:
-			return (int) (buckets * (Math.log(frequency) - Math.log(frequencyStart)) / (Math.log(frequencyEnd) - Math.log(frequencyStart)));
-
-		default:
-			throw new IllegalArgumentException("Unsupported bucket type");
-
-		}
-	}
-
-	private final int getFrequencyForBucket(BucketType bucketType, int buckets, int bucket, int frequencyStart, int frequencyEnd) {
-		if (bucketType == null) { bucketType = BucketType.LINEAR; }
-
-		switch (bucketType) {
-		case LINEAR:
-			return bucket * (frequencyEnd - frequencyStart) / (buckets - 1) + frequencyStart;
-
-		case LOGARITHMIC:
-			return (int) Math.pow(Math.E, buckets * (Math.log(frequencyEnd) - Math.log(frequencyStart)) / (buckets - 1)) + frequencyStart;
-
-		default:
-			throw new IllegalArgumentException("Unsupported bucket type");
-
-		}
-	}
-
-	private static final float scaleOutput(OutputType outputType, double volume, double noiseFloor, float value) {
+	static final float scaleOutput(OutputType outputType, double volume, double noiseFloor, float value) {
 		if (outputType == null) { outputType = OutputType.LINEAR; }
 
 		value *= volume;
@@ -661,18 +853,6 @@ public class FftService {
 		}
 	}
 
-	private final AudioFormat[] createSupportedAudioFormats(int channels) {
-		List<AudioFormat> formats = new ArrayList<>();
-
-		for (float sampleRate : new float[] { 44100.0f, 48000.0f, 96000.0f, 32000.0f, 22050.0f }) {
-			for (int bitsPerSample : new int[] { 16, 24, 32, 8 }) {
-				formats.add(new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, bitsPerSample, channels, bitsPerSample * channels / 8, sampleRate, false));
-			}
-		}
-
-		return formats.toArray(new AudioFormat[0]);
-	}
-
 	public final void addStatusListener(StatusListener listener) {
 		this.statusListener.add(listener);
 	}
@@ -733,6 +913,35 @@ public class FftService {
 
 	}
 
+	private static class AnalysisTask extends RecursiveAction {
+
+		// Stupid id that nobody needs but Eclipse complains about ...
+		private static final long serialVersionUID = -4093711316528478052L;
+
+		private final IntConsumer work;
+		private final int from;
+		private final int to;
+
+		public AnalysisTask(IntConsumer work, int from, int to) {
+			this.work = work;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			// Split the work units in halves until each task only has a single unit left.
+			if (to - from == 1) {
+				work.accept(from);
+				return;
+			}
+
+			final int middle = (from + to) >>> 1;
+			invokeAll(new AnalysisTask(work, from, middle), new AnalysisTask(work, middle, to));
+		}
+
+	}
+
 	public static class DeviceInfo {
 
 		private final Mixer mixer;
@@ -764,24 +973,49 @@ public class FftService {
 		private final float endFrequency;
 		private final int channels;
 		private final int buckets;
-		private final float[][] level;
-		private final float[][] peak;
-		private final int[][] samples;
+
+		// The values of all channels are stored one after another in a single array,
+		// the value of a bucket is at the index channel * buckets + bucket.
+		private final float[] level;
+		private final float[] peak;
+		private final float[] samples;
+
+		// Timestamps (System.nanoTime) of the stages that the data passes on its way to VTS.
+		private long captureTime;
+		private long analysisTime;
+		private volatile long enqueueTime;
+		private volatile long sendTime;
+		private volatile long ackTime;
+
+		// The data returns to the pool when the last reference has been released.
+		// Data without a pool is never reused and does not need to be released.
+		private final FftDataPool pool;
+		private final AtomicInteger references;
+
+		// Snapshots can only be read, none of their values or timestamps can be changed.
+		private final boolean readOnly;
 
 		public FftData(float startFrequency, float endFrequency, int channels, int buckets) {
+			this(startFrequency, endFrequency, channels, buckets, null, false);
+		}
+
+		FftData(float startFrequency, float endFrequency, int channels, int buckets, FftDataPool pool) {
+			this(startFrequency, endFrequency, channels, buckets, pool, false);
+		}
+
+		private FftData(float startFrequency, float endFrequency, int channels, int buckets, FftDataPool pool, boolean readOnly) {
 			this.startFrequency = startFrequency;
 			this.endFrequency = endFrequency;
 			this.channels = channels;
 			this.buckets = buckets;
 
-			level = new float[channels][];
-			peak = new float[channels][];
-			samples = new int[channels][];
-			for (int channel = 0; channel < channels; channel++) {
-				level[channel] = new float[buckets];
-				peak[channel] = new float[buckets];
-				samples[channel] = new int[buckets];
-			}
+			this.level = new float[channels * buckets];
+			this.peak = new float[channels * buckets];
+			this.samples = new float[channels * buckets];
+
+			this.pool = pool;
+			this.references = new AtomicInteger(1);
+			this.readOnly = readOnly;
 		}
 
 		public float getStartFrequency() {
@@ -801,15 +1035,123 @@ public class FftService {
 		}
 
 		public float getLevel(int channel, int bucket) {
-			return level[channel][bucket];
+			return level[channel * buckets + bucket];
 		}
 
 		public float getPeak(int channel, int bucket) {
-			return peak[channel][bucket];
+			return peak[channel * buckets + bucket];
 		}
 
 		public float getSamples(int channel, int bucket) {
-			return samples[channel][bucket];
+			return samples[channel * buckets + bucket];
+		}
+
+		// Only used by the output scheduler which creates data in between two analysis results.
+		final void setValues(int channel, int bucket, float level, float peak, float samples) {
+			checkWritable();
+			final int index = channel * buckets + bucket;
+			this.level[index] = level;
+			this.peak[index] = peak;
+			this.samples[index] = samples;
+		}
+
+		final void setTimes(long captureTime, long analysisTime) {
+			checkWritable();
+			this.captureTime = captureTime;
+			this.analysisTime = analysisTime;
+		}
+
+		// Time when the newest audio sample of the analyzed window has been recorded.
+		public long getCaptureTime() {
+			return captureTime;
+		}
+
+		// Time when the analysis of the window has been finished.
+		public long getAnalysisTime() {
+			return analysisTime;
+		}
+
+		// Time when the data has been handed over to the VTS service.
+		public long getEnqueueTime() {
+			return enqueueTime;
+		}
+
+		public void setEnqueueTime(long enqueueTime) {
+			checkWritable();
+			this.enqueueTime = enqueueTime;
+		}
+
+		// Time when the data has been sent to VTS.
+		public long getSendTime() {
+			return sendTime;
+		}
+
+		public void setSendTime(long sendTime) {
+			checkWritable();
+			this.sendTime = sendTime;
+		}
+
+		// Time when VTS has acknowledged the data.
+		public long getAckTime() {
+			return ackTime;
+		}
+
+		public void setAckTime(long ackTime) {
+			checkWritable();
+			this.ackTime = ackTime;
+		}
+
+		// Listeners that keep the data after returning from the listener call have to retain it
+		// and release it when they are done. Otherwise the data is reused for the next results.
+		public FftData retain() {
+			references.incrementAndGet();
+			return this;
+		}
+
+		public void release() {
+			final int remaining = references.decrementAndGet();
+			if (remaining == 0 && pool != null) {
+				pool.recycle(this);
+			} else if (remaining < 0) {
+				throw new IllegalStateException("FFT data has been released too often");
+			}
+		}
+
+		public boolean isReadOnly() {
+			return readOnly;
+		}
+
+		private final void checkWritable() {
+			if (readOnly) {
+				throw new IllegalStateException("FFT data snapshots are read-only");
+			}
+		}
+
+		// Returns a read-only copy that is never reused, for listeners that want to keep the data for a long time.
+		public FftData snapshot() {
+			final FftData snapshot = new FftData(startFrequency, endFrequency, channels, buckets, null, true);
+			System.arraycopy(level, 0, snapshot.level, 0, level.length);
+			System.arraycopy(peak, 0, snapshot.peak, 0, peak.length);
+			System.arraycopy(samples, 0, snapshot.samples, 0, samples.length);
+			snapshot.captureTime = captureTime;
+			snapshot.analysisTime = analysisTime;
+			snapshot.enqueueTime = enqueueTime;
+			snapshot.sendTime = sendTime;
+			snapshot.ackTime = ackTime;
+			return snapshot;
+		}
+
+		// Prepares the data from the pool for the next results.
+		final void reset() {
+			Arrays.fill(level, 0.0f);
+			Arrays.fill(peak, 0.0f);
+			Arrays.fill(samples, 0.0f);
+			captureTime = 0;
+			analysisTime = 0;
+			enqueueTime = 0;
+			sendTime = 0;
+			ackTime = 0;
+			references.set(1);
 		}
 
 	}
@@ -0,0 +1,68 @@
+package me.yuzu.vts.fft;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.Gson;
+
+public class HeadlessAnalysis {
+
+	// Analyzes a WAV file without a user interface, audio device or VTube Studio and prints how fast
+	// the analysis ran. Used to reproduce issues with recordings and to measure the analysis speed.
+	//   java -cp vts-fft-plugin.jar me.yuzu.vts.fft.HeadlessAnalysis <file.wav> [--paced] [config.json]
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path wavPath = null;
+		Path settingsPath = null;
+		boolean paced = false;
+		for (final String arg : args) {
+			if (arg.equals("--paced")) {
+				paced = true;
+			} else if (wavPath == null) {
+				wavPath = Paths.get(arg);
+			} else {
+				settingsPath = Paths.get(arg);
+			}
+		}
+		if (wavPath == null) {
+			System.err.println("Usage: HeadlessAnalysis <file.wav> [--paced] [config.json]");
+			System.exit(2);
+			return;
+		}
+
+		Settings settings = new Settings();
+		if (settingsPath != null) {
+			try (Reader reader = Files.newBufferedReader(settingsPath)) {
+				settings = new Gson().fromJson(reader, Settings.class);
+			}
+		}
+
+		final FftService fftService = new FftService();
+		final AtomicLong frames = new AtomicLong(0);
+		final CountDownLatch finished = new CountDownLatch(1);
+		fftService.addFftDataListener(data -> frames.incrementAndGet());
+		fftService.addStatusListener(status -> {
+			if (status == FftService.Status.Disconnected) {
+				finished.countDown();
+			}
+		});
+
+		// The service disconnects by itself at the end of the file.
+		final WavFileAudioSource source = new WavFileAudioSource(wavPath, paced);
+		final long startTime = System.nanoTime();
+		fftService.start(source, settings);
+		finished.await();
+		final long elapsedTime = System.nanoTime() - startTime;
+
+		final double audioSeconds = source.getFramesRead() / (double) source.getFormat().getFrameRate();
+		System.out.println(String.format("Analyzed %d windows (%.1f s of audio) in %.1f ms, %.1fx real time",
+				frames.get(), audioSeconds, elapsedTime / 1000000.0d, audioSeconds / (elapsedTime / 1000000000.0d)));
+		System.out.println(String.format("The analysis skipped samples %d times and waited for the source %d times",
+				fftService.getCaptureOverruns(), fftService.getCaptureUnderruns()));
+	}
+
+}
@@ -0,0 +1,106 @@
+package me.yuzu.vts.fft;
+
+public class InjectParameterWriter {
+
+	// Number of decimal places written for each value. VTS displays parameters with less precision anyway.
+	private static final int DECIMALS = 4;
+	private static final int DECIMAL_SCALE = 10000;
+
+	private static final String MESSAGE_START = "{\"apiName\":\"VTubeStudioPublicAPI\",\"apiVersion\":\"1.0\",\"requestID\":\"";
+	private static final String MESSAGE_DATA = "\",\"messageType\":\"InjectParameterDataRequest\",\"data\":{\"parameterValues\":[";
+	private static final String MESSAGE_END = "]}}";
+
+	// The static part of every parameter value is rendered once: {"id":"<name>","value":
+	private final String[] parameterPrefixes;
+	private final StringBuilder message;
+
+	// Creates a writer for InjectParameterDataRequest messages of the given parameters.
+	// The parameter ids must not contain characters that have to be escaped in JSON.
+	public InjectParameterWriter(String[] parameterIds) {
+		this.parameterPrefixes = new String[parameterIds.length];
+		int length = MESSAGE_START.length() + 20 + MESSAGE_DATA.length() + MESSAGE_END.length();
+		for (int parameter = 0; parameter < parameterIds.length; parameter++) {
+			parameterPrefixes[parameter] = "{\"id\":\"" + parameterIds[parameter] + "\",\"value\":";
+			length += parameterPrefixes[parameter].length() + 16;
+		}
+
+		// The buffer is large enough for every message and is reused for each message.
+		this.message = new StringBuilder(length);
+	}
+
+	public final int getParameters() {
+		return parameterPrefixes.length;
+	}
+
+	// Writes the message with the values of all parameters. The returned buffer is only valid until the next call.
+	public final CharSequence write(long requestId, float[] values) {
+		return write(requestId, values, null);
+	}
+
+	// Writes the message with the values of the parameters where include is true (all parameters if include is null).
+	// The returned buffer is only valid until the next call.
+	public final CharSequence write(long requestId, float[] values, boolean[] include) {
+		message.setLength(0);
+		message.append(MESSAGE_START).append(requestId).append(MESSAGE_DATA);
+
+		boolean first = true;
+		for (int parameter = 0; parameter < parameterPrefixes.length; parameter++) {
+			if (include != null && !include[parameter]) {
+				continue;
+			}
+
+			if (!first) {
+				message.append(',');
+			}
+			first = false;
+
+			message.append(parameterPrefixes[parameter]);
+			appendValue(message, values[parameter]);
+			message.append('}');
+		}
+
+		message.append(MESSAGE_END);
+		return message;
+	}
+
+	// Writes the value with a fixed number of decimal places and without trailing zeros.
+	// Unlike Float.toString this does not create any objects.
+	private static final void appendValue(StringBuilder builder, float value) {
+		if (Float.isNaN(value)) {
+			value = 0.0f;
+		}
+		value = Math.max(-1000000.0f, Math.min(value, 1000000.0f));
+		if (value < 0.0f) {
+			builder.append('-');
+			value = -value;
+		}
+
+		final long scaled = (long) (value * (double) DECIMAL_SCALE + 0.5d);
+		builder.append(scaled / DECIMAL_SCALE);
+
+		int fraction = (int) (scaled % DECIMAL_SCALE);
+		if (fraction == 0) {
+			return;
+		}
+
+		// Remove trailing zeros and then write the remaining digits including leading zeros.
+		int digits = DECIMALS;
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			digits--;
+		}
+		builder.append('.');
+		for (int divisor = pow10(digits - 1); divisor > 0; divisor /= 10) {
+			builder.append((char) ('0' + (fraction / divisor) % 10));
+		}
+	}
+
+	private static final int pow10(int exponent) {
+		int value = 1;
+		for (int index = 0; index < exponent; index++) {
+			value *= 10;
+		}
+		return value;
+	}
+
+}
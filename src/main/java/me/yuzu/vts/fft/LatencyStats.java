@@ -0,0 +1,153 @@
+package me.yuzu.vts.fft;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import me.yuzu.vts.fft.FftService.FftData;
+
+public class LatencyStats {
+
+	public static enum Stage {
+
+		// Capture to the end of the analysis. Includes the audio that was still waiting in the audio device buffer.
+		Analysis,
+		// End of the analysis to handing the data over to the VTS service.
+		Pacing,
+		// Handing the data over to sending it to VTS.
+		Queue,
+		// Sending the data to the response from VTS.
+		Vts,
+		// Capture to the response from VTS.
+		Total
+
+	}
+
+	private final Histogram[] histograms;
+
+	public LatencyStats() {
+		this.histograms = new Histogram[Stage.values().length];
+		for (Stage stage : Stage.values()) {
+			this.histograms[stage.ordinal()] = new Histogram();
+		}
+	}
+
+	// Records all stages of the FFT data after VTS acknowledged it. Does not allocate memory.
+	public final void record(FftData fftData) {
+		histograms[Stage.Analysis.ordinal()].record(fftData.getAnalysisTime() - fftData.getCaptureTime());
+		histograms[Stage.Pacing.ordinal()].record(fftData.getEnqueueTime() - fftData.getAnalysisTime());
+		histograms[Stage.Queue.ordinal()].record(fftData.getSendTime() - fftData.getEnqueueTime());
+		histograms[Stage.Vts.ordinal()].record(fftData.getAckTime() - fftData.getSendTime());
+		histograms[Stage.Total.ordinal()].record(fftData.getAckTime() - fftData.getCaptureTime());
+	}
+
+	public final Histogram getHistogram(Stage stage) {
+		return histograms[stage.ordinal()];
+	}
+
+	public final void reset() {
+		for (Histogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	// Prints the percentiles of all stages to the console.
+	public final void dump() {
+		System.out.println(String.format("Latency of %d values sent to VTS (p50 / p99 / max):", histograms[Stage.Total.ordinal()].getCount()));
+		for (Stage stage : Stage.values()) {
+			final Histogram histogram = histograms[stage.ordinal()];
+			System.out.println(String.format("  %-8s %8.2f ms / %8.2f ms / %8.2f ms", stage.name(),
+					histogram.getPercentile(0.5d) / 1000000.0d, histogram.getPercentile(0.99d) / 1000000.0d, histogram.getMax() / 1000000.0d));
+		}
+	}
+
+	public static class Histogram {
+
+		// The values are counted in microseconds. Below 16 us every microsecond has its own bucket.
+		// Above that every power of two is split into 8 buckets which keeps the error below 12.5%.
+		private static final int LINEAR_BUCKETS = 16;
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int MAX_EXPONENT = 40; // About 18 minutes
+		private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 4) * SUB_BUCKETS;
+
+		private final AtomicLongArray counts;
+		private final AtomicLong count;
+		private final AtomicLong max;
+
+		public Histogram() {
+			this.counts = new AtomicLongArray(BUCKETS);
+			this.count = new AtomicLong(0);
+			this.max = new AtomicLong(0);
+		}
+
+		public final void record(long nanos) {
+			final long value = Math.max(0, nanos);
+			counts.incrementAndGet(getBucket(value / 1000L));
+			count.incrementAndGet();
+
+			long last = max.get();
+			while (value > last && !max.compareAndSet(last, value)) {
+				last = max.get();
+			}
+		}
+
+		// Returns the upper end of the bucket that contains the percentile (0 to 1) in nanoseconds.
+		public final long getPercentile(double percentile) {
+			final long total = count.get();
+			if (total == 0) {
+				return 0;
+			}
+
+			final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+			long sum = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				sum += counts.get(bucket);
+				if (sum >= rank) {
+					return Math.min(getBucketEnd(bucket) * 1000L, max.get());
+				}
+			}
+			return max.get();
+		}
+
+		public final long getMax() {
+			return max.get();
+		}
+
+		public final long getCount() {
+			return count.get();
+		}
+
+		public final void reset() {
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				counts.set(bucket, 0);
+			}
+			count.set(0);
+			max.set(0);
+		}
+
+		private static final int getBucket(long micros) {
+			if (micros < LINEAR_BUCKETS) {
+				return (int) micros;
+			}
+
+			final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+			if (exponent >= MAX_EXPONENT) {
+				return BUCKETS - 1;
+			}
+			final int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+		}
+
+		private static final long getBucketEnd(int bucket) {
+			if (bucket < LINEAR_BUCKETS) {
+				return bucket + 1;
+			}
+
+			final int exponent = 4 + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+			final int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+			return (1L << exponent) + ((long) (subBucket + 1) << (exponent - SUB_BUCKET_BITS));
+		}
+
+	}
+
+}
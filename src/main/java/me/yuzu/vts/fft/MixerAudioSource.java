@@ -0,0 +1,104 @@
+package me.yuzu.vts.fft;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+public class MixerAudioSource implements AudioSource {
+
+	private final Mixer mixer;
+	private volatile TargetDataLine targetDataLine;
+
+	public MixerAudioSource(Mixer mixer) {
+		this.mixer = mixer;
+		this.targetDataLine = null;
+	}
+
+	@Override
+	public void open(int channels, int bufferFrames) throws IOException {
+		// Find the correct options to open this audio device.
+		for (final AudioFormat audioFormat : createSupportedAudioFormats(channels)) {
+			final DataLine.Info lineInfo = new DataLine.Info(TargetDataLine.class, audioFormat);
+			if (!mixer.isLineSupported(lineInfo)) {
+				continue;
+			}
+
+			try {
+				final TargetDataLine line = (TargetDataLine) AudioSystem.getTargetDataLine(audioFormat, mixer.getMixerInfo());
+				// 100 ms buffer but at least the requested size such that a large window can be read while the next one is recorded.
+				line.open(audioFormat, Math.max((int) (audioFormat.getChannels() * audioFormat.getFrameRate() * 0.1), bufferFrames * audioFormat.getFrameSize()));
+				line.start();
+				targetDataLine = line;
+				return;
+			} catch (IllegalArgumentException illegalArgumentException) {
+				continue;
+			} catch (LineUnavailableException lineUnavailableException) {
+				throw new IOException("Audio device was not ready to be opened!", lineUnavailableException);
+			}
+		}
+
+		throw new IOException("Could not open the device in any supported audio format!");
+	}
+
+	@Override
+	public AudioFormat getFormat() {
+		return targetDataLine.getFormat();
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) {
+		return targetDataLine.read(buffer, offset, length);
+	}
+
+	@Override
+	public int available() {
+		return targetDataLine.available();
+	}
+
+	@Override
+	public boolean isRealTime() {
+		return true;
+	}
+
+	@Override
+	public void stop() {
+		final TargetDataLine line = targetDataLine;
+		if (line != null) {
+			line.stop();
+			line.flush();
+		}
+	}
+
+	@Override
+	public void close() {
+		final TargetDataLine line = targetDataLine;
+		if (line != null) {
+			line.close();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return mixer.getMixerInfo().getName();
+	}
+
+	public static final AudioFormat[] createSupportedAudioFormats(int channels) {
+		List<AudioFormat> formats = new ArrayList<>();
+
+		for (float sampleRate : new float[] { 44100.0f, 48000.0f, 96000.0f, 32000.0f, 22050.0f }) {
+			for (int bitsPerSample : new int[] { 16, 24, 32, 8 }) {
+				formats.add(new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, bitsPerSample, channels, bitsPerSample * channels / 8, sampleRate, false));
+			}
+		}
+
+		return formats.toArray(new AudioFormat[0]);
+	}
+
+}
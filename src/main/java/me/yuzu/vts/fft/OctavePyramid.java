@@ -0,0 +1,128 @@
+package me.yuzu.vts.fft;
+
+public class OctavePyramid {
+
+	// Number of taps of the half-band filter used before each decimation.
+	// Only every second tap is non-zero apart from the center tap.
+	private static final int HALF_BAND_TAPS = 15;
+	private static final double[] HALF_BAND_COEFFICIENTS = createHalfBandCoefficients(HALF_BAND_TAPS);
+
+	private final int octaves;
+	private final int size;
+
+	// One ring buffer for each octave holding the last size samples at the sample rate of the octave.
+	private final double[][] history;
+	private final int[] historyOffsets;
+	private final HalfBandDecimator[] decimators;
+
+	// Creates a pyramid where octave 0 stores the input and every following octave
+	// stores the previous octave low-pass filtered and decimated by two.
+	public OctavePyramid(int octaves, int size) {
+		this.octaves = octaves;
+		this.size = size;
+		this.history = new double[octaves][size];
+		this.historyOffsets = new int[octaves];
+		this.decimators = new HalfBandDecimator[Math.max(0, octaves - 1)];
+		for (int octave = 0; octave < decimators.length; octave++) {
+			decimators[octave] = new HalfBandDecimator();
+		}
+	}
+
+	public final int getOctaves() {
+		return octaves;
+	}
+
+	public final int getSize() {
+		return size;
+	}
+
+	// Processes the new samples input[start] to input[start + count - 1] of the ring buffer.
+	// Every octave receives half the samples of the octave before.
+	public final void process(float[] input, int start, int count) {
+		for (int offset = 0; offset < count; offset++) {
+			double value = input[(start + offset) % input.length];
+
+			for (int octave = 0; octave < octaves; octave++) {
+				history[octave][historyOffsets[octave]] = value;
+				historyOffsets[octave] = (historyOffsets[octave] + 1) % size;
+
+				if (octave == decimators.length || !decimators[octave].push(value)) {
+					break;
+				}
+				value = decimators[octave].getOutput();
+			}
+		}
+	}
+
+	// Copies the last size samples of the octave (oldest first) to the output while applying the window.
+	public final void copyWindowed(int octave, double[] window, double[] output) {
+		final double[] octaveHistory = history[octave];
+		final int historyOffset = historyOffsets[octave];
+		for (int index = 0; index < size; index++) {
+			output[index] = octaveHistory[(historyOffset + index) % size] * window[index];
+		}
+	}
+
+	private static final double[] createHalfBandCoefficients(int taps) {
+		// Windowed sinc with the cut-off at a quarter of the sample rate.
+		// Blackman window to keep the aliasing of the following decimation low.
+		final double[] coefficients = new double[taps];
+		final int center = taps / 2;
+		double sum = 0.0d;
+		for (int tap = 0; tap < taps; tap++) {
+			final int offset = tap - center;
+			final double sinc = (offset == 0) ? 0.5d : Math.sin(0.5d * Math.PI * offset) / (Math.PI * offset);
+			final double phase = 2.0d * Math.PI * (tap + 1) / (taps + 1);
+			final double window = 0.42d - 0.5d * Math.cos(phase) + 0.08d * Math.cos(2.0d * phase);
+			coefficients[tap] = sinc * window;
+			sum += coefficients[tap];
+		}
+
+		// Normalize to unit gain for constant signals.
+		for (int tap = 0; tap < taps; tap++) {
+			coefficients[tap] /= sum;
+		}
+		return coefficients;
+	}
+
+	private static class HalfBandDecimator {
+
+		private final double[] delayLine;
+		private int delayOffset;
+		private boolean phase;
+		private double output;
+
+		public HalfBandDecimator() {
+			this.delayLine = new double[HALF_BAND_TAPS];
+			this.delayOffset = 0;
+			this.phase = false;
+			this.output = 0.0d;
+		}
+
+		// Pushes a sample into the filter and returns true if an output sample is available.
+		public final boolean push(double value) {
+			delayLine[delayOffset] = value;
+			delayOffset = (delayOffset + 1) % HALF_BAND_TAPS;
+
+			phase = !phase;
+			if (phase) {
+				return false;
+			}
+
+			// Only the center tap and the odd taps around it are non-zero for a half-band filter.
+			final int center = HALF_BAND_TAPS / 2;
+			double sum = HALF_BAND_COEFFICIENTS[center] * delayLine[(delayOffset + center) % HALF_BAND_TAPS];
+			for (int tap = (center % 2 == 0) ? 1 : 0; tap < HALF_BAND_TAPS; tap += 2) {
+				sum += HALF_BAND_COEFFICIENTS[tap] * delayLine[(delayOffset + tap) % HALF_BAND_TAPS];
+			}
+			output = sum;
+			return true;
+		}
+
+		public final double getOutput() {
+			return output;
+		}
+
+	}
+
+}
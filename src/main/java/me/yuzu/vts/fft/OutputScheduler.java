@@ -0,0 +1,208 @@
+package me.yuzu.vts.fft;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import me.yuzu.vts.fft.FftService.FftData;
+import me.yuzu.vts.fft.FftService.FftDataListener;
+
+public class OutputScheduler {
+
+	private static final int OUTPUT_POOL_SIZE = 16;
+
+	private final List<FftDataListener> fftListener;
+	private final Object threadLock;
+
+	// The newest analysis result that the output thread has not taken yet. The output thread
+	// owns the results it has taken, so they cannot be reused while it interpolates between them.
+	private final AtomicReference<FftData> incoming;
+	private volatile boolean passThrough;
+	private Thread outputThread;
+
+	public OutputScheduler() {
+		this.fftListener = new ArrayList<>();
+		this.threadLock = new Object();
+		this.incoming = new AtomicReference<>(null);
+		this.passThrough = true;
+		this.outputThread = null;
+	}
+
+	// Starts sending values at the output rate of the settings. An output rate of zero or the
+	// low latency preset passes every analysis result on directly instead, since the interpolation
+	// delays the values by one analysis step.
+	public final void start(Settings settings) {
+		synchronized (threadLock) {
+			stop();
+
+			passThrough = settings.outputRate <= 0 || settings.lowLatency;
+			if (passThrough) {
+				return;
+			}
+
+			final long period = 1000000000L / Math.max(1, Math.min(settings.outputRate, 1000));
+			final double attackCoefficient = getEnvelopeCoefficient(period, settings.outputAttack);
+			final double releaseCoefficient = getEnvelopeCoefficient(period, settings.outputRelease);
+			System.out.println(String.format("Sending values at %.1f Hz (attack %d ms, release %d ms)",
+					1000000000.0d / period, Math.max(0, settings.outputAttack), Math.max(0, settings.outputRelease)));
+
+			outputThread = new Thread(() -> run(period, (float) attackCoefficient, (float) releaseCoefficient), "Output scheduler");
+			outputThread.setDaemon(true);
+			outputThread.start();
+		}
+	}
+
+	public final void stop() {
+		synchronized (threadLock) {
+			if (outputThread == null) {
+				return;
+			}
+
+			outputThread.interrupt();
+			try {
+				outputThread.join();
+			} catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			outputThread = null;
+			passThrough = true;
+
+			final FftData fftData = incoming.getAndSet(null);
+			if (fftData != null) {
+				fftData.release();
+			}
+		}
+	}
+
+	// Called by the thread of the FFT service for every analysis result. Never blocks.
+	public final void update(FftData fftData) {
+		if (passThrough) {
+			notifyListener(fftData);
+			return;
+		}
+
+		// Replace the result that the output thread did not take in time.
+		final FftData skipped = incoming.getAndSet(fftData.retain());
+		if (skipped != null) {
+			skipped.release();
+		}
+	}
+
+	private final void run(long period, float attackCoefficient, float releaseCoefficient) {
+		FftData previous = null;
+		FftData latest = null;
+		FftDataPool outputPool = null;
+		float[][] levels = null;
+		float[][] peaks = null;
+
+		try {
+			long nextOutput = System.nanoTime();
+			while (!Thread.currentThread().isInterrupted()) {
+				// Wait for the next output time. Park might return early so check the time again.
+				nextOutput += period;
+				long remaining;
+				while ((remaining = nextOutput - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+					LockSupport.parkNanos(this, remaining);
+				}
+
+				// Skip the missed outputs instead of sending them all at once if this thread has been delayed.
+				final long now = System.nanoTime();
+				if (now - nextOutput > period) {
+					nextOutput = now;
+				}
+
+				// Take the newest result if there is one and forget the oldest.
+				final FftData next = incoming.getAndSet(null);
+				if (next != null) {
+					if (previous != null) {
+						previous.release();
+					}
+					previous = (latest != null) ? latest : next.retain();
+					latest = next;
+				}
+				if (latest == null) {
+					continue;
+				}
+
+				// Move from the previous to the latest result within the time between the two results.
+				// This delays the output by one analysis step but the values never jump.
+				final long interval = latest.getAnalysisTime() - previous.getAnalysisTime();
+				final float position = (interval <= 0) ? 1.0f
+						: Math.max(0.0f, Math.min((float) ((now - latest.getAnalysisTime()) / (double) interval), 1.0f));
+
+				final int channels = latest.getChannels();
+				final int buckets = latest.getBuckets();
+				if (outputPool == null || outputPool.getChannels() != channels || outputPool.getBuckets() != buckets) {
+					outputPool = new FftDataPool(latest.getStartFrequency(), latest.getEndFrequency(), channels, buckets, OUTPUT_POOL_SIZE);
+					levels = new float[channels][buckets];
+					peaks = new float[channels][buckets];
+				}
+
+				final FftData output = outputPool.acquire();
+				for (int channel = 0; channel < channels; channel++) {
+					for (int bucket = 0; bucket < buckets; bucket++) {
+						final float level = interpolate(previous.getLevel(channel, bucket), latest.getLevel(channel, bucket), position);
+						final float peak = interpolate(previous.getPeak(channel, bucket), latest.getPeak(channel, bucket), position);
+
+						// Rising values follow with the attack and falling values with the release time.
+						levels[channel][bucket] += (level - levels[channel][bucket]) * (level > levels[channel][bucket] ? attackCoefficient : releaseCoefficient);
+						peaks[channel][bucket] += (peak - peaks[channel][bucket]) * (peak > peaks[channel][bucket] ? attackCoefficient : releaseCoefficient);
+						output.setValues(channel, bucket, levels[channel][bucket], peaks[channel][bucket], latest.getSamples(channel, bucket));
+					}
+				}
+
+				// The output contains audio from between the two results.
+				output.setTimes(interpolate(previous.getCaptureTime(), latest.getCaptureTime(), position),
+						interpolate(previous.getAnalysisTime(), latest.getAnalysisTime(), position));
+				notifyListener(output);
+				output.release();
+			}
+		} finally {
+			if (previous != null) {
+				previous.release();
+			}
+			if (latest != null) {
+				latest.release();
+			}
+		}
+	}
+
+	private final void notifyListener(FftData fftData) {
+		for (FftDataListener listener : fftListener) {
+			if (listener != null) {
+				listener.onFftData(fftData);
+			}
+		}
+	}
+
+	// Returns the part of the distance to the target that is moved in each output step,
+	// such that about 63% of a change is reached after the given time. Zero follows immediately.
+	private static final double getEnvelopeCoefficient(long period, int milliseconds) {
+		if (milliseconds <= 0) {
+			return 1.0d;
+		}
+		return 1.0d - Math.exp(-period / (milliseconds * 1000000.0d));
+	}
+
+	private static final float interpolate(float from, float to, float position) {
+		return from + (to - from) * position;
+	}
+
+	private static final long interpolate(long from, long to, float position) {
+		return from + (long) ((to - from) * (double) position);
+	}
+
+	public final void addFftDataListener(FftDataListener listener) {
+		this.fftListener.add(listener);
+	}
+
+	public final void removeFftDataListener(FftDataListener listener) {
+		this.fftListener.remove(listener);
+	}
+
+	public final void clearFftDataListener() {
+		this.fftListener.clear();
+	}
+
+}
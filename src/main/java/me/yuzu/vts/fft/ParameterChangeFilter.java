@@ -0,0 +1,49 @@
+package me.yuzu.vts.fft;
+
+public class ParameterChangeFilter {
+
+	private final double threshold;
+	private final double resolution;
+	private final long keepAlive;
+
+	// The last value and time that has been sent for each parameter.
+	private final float[] sentValues;
+	private final long[] sentTimes;
+	private final boolean[] sent;
+
+	// Creates a filter that only lets values pass that moved at least the threshold since they were sent last.
+	// The values are rounded to the resolution first. Every value is sent again after the keep-alive time
+	// (in nanoseconds) even if it did not change. A threshold and resolution of zero let all values pass.
+	public ParameterChangeFilter(int parameters, double threshold, double resolution, long keepAlive) {
+		this.threshold = Math.max(0.0d, threshold);
+		this.resolution = Math.max(0.0d, resolution);
+		this.keepAlive = Math.max(0, keepAlive);
+		this.sentValues = new float[parameters];
+		this.sentTimes = new long[parameters];
+		this.sent = new boolean[parameters];
+	}
+
+	// Quantizes the values in place and marks the values that have to be sent. The marked values
+	// are remembered as sent. Returns the number of values to send which can be zero if nothing changed.
+	public final int filter(float[] values, boolean[] include, long time) {
+		int count = 0;
+		for (int parameter = 0; parameter < values.length; parameter++) {
+			if (resolution > 0.0d) {
+				values[parameter] = (float) (Math.round(values[parameter] / resolution) * resolution);
+			}
+
+			include[parameter] = threshold <= 0.0d
+					|| !sent[parameter]
+					|| Math.abs(values[parameter] - sentValues[parameter]) >= threshold
+					|| time - sentTimes[parameter] >= keepAlive;
+			if (include[parameter]) {
+				sentValues[parameter] = values[parameter];
+				sentTimes[parameter] = time;
+				sent[parameter] = true;
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
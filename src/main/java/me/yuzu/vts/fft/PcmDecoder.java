@@ -0,0 +1,180 @@
+package me.yuzu.vts.fft;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+import javax.sound.sampled.AudioFormat;
+
+public abstract class PcmDecoder {
+
+	protected final int channels;
+
+	protected PcmDecoder(int channels) {
+		this.channels = channels;
+	}
+
+	// Returns the decoder for signed little-endian PCM data of the format. The decoder is selected once
+	// when the audio device is opened such that the conversion does not check the format for every sample.
+	public static final PcmDecoder create(AudioFormat format, DspKernels kernels) {
+		final int channels = format.getChannels();
+		switch (format.getSampleSizeInBits()) {
+		case 8:
+			return new Pcm8Decoder(channels);
+
+		case 16:
+			return (channels == 1) ? new Pcm16MonoDecoder(kernels) : new Pcm16Decoder(channels);
+
+		case 24:
+			return new Pcm24Decoder(channels);
+
+		case 32:
+			return new Pcm32Decoder(channels);
+
+		default:
+			throw new IllegalArgumentException("Unsupported sample size: " + format.getSampleSizeInBits());
+
+		}
+	}
+
+	// Converts the interleaved frames of the input to floats between -1 and 1 and writes each channel
+	// into its own ring starting at the output index. The range in the rings is split into at most
+	// two contiguous parts. Must only be called by a single thread since the decoders keep buffer views.
+	public final void decode(byte[] input, int frames, float[][] output, int outputIndex) {
+		final int length = output[0].length;
+		final int outputStart = outputIndex % length;
+		final int firstPart = Math.min(frames, length - outputStart);
+		decode(input, 0, output, outputStart, firstPart);
+		if (firstPart < frames) {
+			decode(input, firstPart, output, 0, frames - firstPart);
+		}
+	}
+
+	// Converts the frames starting at the input frame into the output without wrapping around.
+	protected abstract void decode(byte[] input, int inputFrame, float[][] output, int outputOffset, int frames);
+
+	// Signed PCM 8 bit: [sbyte]
+	private static final class Pcm8Decoder extends PcmDecoder {
+
+		public Pcm8Decoder(int channels) {
+			super(channels);
+		}
+
+		@Override
+		protected void decode(byte[] input, int inputFrame, float[][] output, int outputOffset, int frames) {
+			for (int channel = 0; channel < channels; channel++) {
+				final float[] channelOutput = output[channel];
+				int inputIndex = inputFrame * channels + channel;
+				for (int frame = 0; frame < frames; frame++, inputIndex += channels) {
+					channelOutput[outputOffset + frame] = input[inputIndex] * (1.0f / 128.0f);
+				}
+			}
+		}
+
+	}
+
+	// Signed PCM 16 bit little-endian mono. Converted in bulk by the kernels which can be vectorized.
+	private static final class Pcm16MonoDecoder extends PcmDecoder {
+
+		private final DspKernels kernels;
+
+		public Pcm16MonoDecoder(DspKernels kernels) {
+			super(1);
+			this.kernels = kernels;
+		}
+
+		@Override
+		protected void decode(byte[] input, int inputFrame, float[][] output, int outputOffset, int frames) {
+			kernels.convertPcm16(input, 2 * inputFrame, output[0], outputOffset, frames);
+		}
+
+	}
+
+	// Signed PCM 16 bit little-endian: [sbyte][byte]
+	// The little-endian view assembles the samples instead of combining the bytes by hand.
+	private static final class Pcm16Decoder extends PcmDecoder {
+
+		private byte[] viewInput;
+		private ShortBuffer view;
+
+		public Pcm16Decoder(int channels) {
+			super(channels);
+		}
+
+		@Override
+		protected void decode(byte[] input, int inputFrame, float[][] output, int outputOffset, int frames) {
+			// The capture thread always reads into the same buffer, so the view is only created once.
+			if (viewInput != input) {
+				viewInput = input;
+				view = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+			}
+
+			final ShortBuffer samples = view;
+			for (int channel = 0; channel < channels; channel++) {
+				final float[] channelOutput = output[channel];
+				int inputIndex = inputFrame * channels + channel;
+				for (int frame = 0; frame < frames; frame++, inputIndex += channels) {
+					channelOutput[outputOffset + frame] = samples.get(inputIndex) * (1.0f / 32768.0f);
+				}
+			}
+		}
+
+	}
+
+	// Signed PCM 24 bit little-endian: [byte][byte][sbyte]
+	// There is no buffer view for three byte values, so the samples are unpacked directly.
+	private static final class Pcm24Decoder extends PcmDecoder {
+
+		public Pcm24Decoder(int channels) {
+			super(channels);
+		}
+
+		@Override
+		protected void decode(byte[] input, int inputFrame, float[][] output, int outputOffset, int frames) {
+			final int frameSize = 3 * channels;
+			for (int channel = 0; channel < channels; channel++) {
+				final float[] channelOutput = output[channel];
+				int inputIndex = inputFrame * frameSize + 3 * channel;
+				for (int frame = 0; frame < frames; frame++, inputIndex += frameSize) {
+					final int sample = (input[inputIndex] & 0xFF)
+							| ((input[inputIndex + 1] & 0xFF) << 8)
+							| (input[inputIndex + 2] << 16);
+					channelOutput[outputOffset + frame] = sample * (1.0f / 8388608.0f);
+				}
+			}
+		}
+
+	}
+
+	// Signed PCM 32 bit little-endian: [byte][byte][byte][sbyte]
+	private static final class Pcm32Decoder extends PcmDecoder {
+
+		private byte[] viewInput;
+		private IntBuffer view;
+
+		public Pcm32Decoder(int channels) {
+			super(channels);
+		}
+
+		@Override
+		protected void decode(byte[] input, int inputFrame, float[][] output, int outputOffset, int frames) {
+			// The capture thread always reads into the same buffer, so the view is only created once.
+			if (viewInput != input) {
+				viewInput = input;
+				view = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			}
+
+			final IntBuffer samples = view;
+			for (int channel = 0; channel < channels; channel++) {
+				final float[] channelOutput = output[channel];
+				int inputIndex = inputFrame * channels + channel;
+				for (int frame = 0; frame < frames; frame++, inputIndex += channels) {
+					channelOutput[outputOffset + frame] = samples.get(inputIndex) * (1.0f / 2147483648.0f);
+				}
+			}
+		}
+
+	}
+
+}
@@ -368,6 +368,7 @@ public class Plugin {
 	private final Gson settingsCodec;
 	private final FftService fftService;
 	private final VtsService vtsService;
+	private final OutputScheduler outputScheduler;
 	private final PluginWindow fftInterface;
 
 	private Settings settings;
@@ -379,10 +380,20 @@ public class Plugin {
 		settingsCodec = new GsonBuilder().setPrettyPrinting().create();
 		fftService = new FftService();
 		vtsService = new VtsService();
+		outputScheduler = new OutputScheduler();
 		fftInterface = new PluginWindow(this);
 
 		fftInterface.registerEventHandler();
-		fftService.addFftDataListener(data -> vtsService.queueFftData(data));
+		// The analysis results are sent to VTS at a fixed rate while the audio device is running.
+		fftService.addFftDataListener(data -> outputScheduler.update(data));
+		fftService.addStatusListener(status -> {
+			if (status == FftService.Status.Connected) {
+				outputScheduler.start(settings);
+			} else if (status == FftService.Status.Disconnecting || status == FftService.Status.Disconnected) {
+				outputScheduler.stop();
+			}
+		});
+		outputScheduler.addFftDataListener(data -> vtsService.queueFftData(data));
 	}
 
 	public Settings getSettings() {
@@ -17,12 +17,15 @@ import javax.swing.JLabel;
 import javax.swing.JSlider;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
+import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
 import me.yuzu.vts.fft.FftService.BucketType;
+import me.yuzu.vts.fft.FftService.FftType;
 import me.yuzu.vts.fft.FftService.OutputType;
+import me.yuzu.vts.fft.FftService.WindowType;
 
 public class PluginWindow extends JFrame {
 
@@ -52,9 +55,14 @@ public class PluginWindow extends JFrame {
 	private final JComboBox<OutputNormalizationTypeListEntry> volumeNormalizationTypeSelect;
 	private final JLabel bucketNormalizationTypeLabel;
 	private final JComboBox<BucketNormalizationTypeListEntry> bucketNormalizationTypeSelect;
+	private final JLabel windowTypeLabel;
+	private final JComboBox<WindowTypeListEntry> windowTypeSelect;
+	private final JLabel fftTypeLabel;
+	private final JComboBox<FftTypeListEntry> fftTypeSelect;
 	private final JLabel statusLabel;
 	private final JLabel statusText;
 	private final JButton startStopButton;
+	private final Timer statusTimer;
 
 	public PluginWindow(Plugin plugin) {
 		this.plugin = plugin;
@@ -69,6 +77,7 @@ public class PluginWindow extends JFrame {
 		addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowClosing(WindowEvent e) {
+				statusTimer.stop();
 				plugin.stopPlugin();
 			}
 		});
@@ -100,12 +109,25 @@ public class PluginWindow extends JFrame {
 		bucketNormalizationTypeSelect = new JComboBox<>();
 		bucketNormalizationTypeSelect.addItem(new BucketNormalizationTypeListEntry(BucketType.LINEAR));
 		bucketNormalizationTypeSelect.addItem(new BucketNormalizationTypeListEntry(BucketType.LOGARITHMIC));
+		windowTypeLabel = new JLabel("Window");
+		windowTypeSelect = new JComboBox<>();
+		for (WindowType windowType : WindowType.values()) {
+			windowTypeSelect.addItem(new WindowTypeListEntry(windowType));
+		}
+		fftTypeLabel = new JLabel("Analysis");
+		fftTypeSelect = new JComboBox<>();
+		for (FftType fftType : FftType.values()) {
+			fftTypeSelect.addItem(new FftTypeListEntry(fftType));
+		}
 
 		statusLabel = new JLabel("Status");
 		statusText = new JLabel("Idle");
 		startStopButton = new JButton("Start");
 		updateStatusField();
 
+		// Refresh the latency in the status line once per second.
+		statusTimer = new Timer(1000, event -> updateStatusField());
+
 		// Initialize the layout and then add functionality to
 		// buttons, sliders and text fields.
 		initializeLayout();
@@ -334,7 +356,7 @@ public class PluginWindow extends JFrame {
 		c.insets = new Insets(3, 5, 3, 3);
 		c.gridx = 0;
 		c.gridy = 10;
-		add(statusLabel, c);
+		add(windowTypeLabel, c);
 
 		c = new GridBagConstraints();
 		c.fill = GridBagConstraints.BOTH;
@@ -344,6 +366,46 @@ public class PluginWindow extends JFrame {
 		c.insets = new Insets(3, 3, 3, 5);
 		c.gridx = 1;
 		c.gridy = 10;
+		add(windowTypeSelect, c);
+
+		c = new GridBagConstraints();
+		c.fill = GridBagConstraints.BOTH;
+		c.anchor = GridBagConstraints.WEST;
+		c.weightx = 0.0d;
+		c.weighty = 1.0d;
+		c.insets = new Insets(3, 5, 3, 3);
+		c.gridx = 0;
+		c.gridy = 11;
+		add(fftTypeLabel, c);
+
+		c = new GridBagConstraints();
+		c.fill = GridBagConstraints.BOTH;
+		c.anchor = GridBagConstraints.CENTER;
+		c.weightx = 1.0d;
+		c.weighty = 1.0d;
+		c.insets = new Insets(3, 3, 3, 5);
+		c.gridx = 1;
+		c.gridy = 11;
+		add(fftTypeSelect, c);
+
+		c = new GridBagConstraints();
+		c.fill = GridBagConstraints.BOTH;
+		c.anchor = GridBagConstraints.WEST;
+		c.weightx = 0.0d;
+		c.weighty = 1.0d;
+		c.insets = new Insets(3, 5, 3, 3);
+		c.gridx = 0;
+		c.gridy = 12;
+		add(statusLabel, c);
+
+		c = new GridBagConstraints();
+		c.fill = GridBagConstraints.BOTH;
+		c.anchor = GridBagConstraints.CENTER;
+		c.weightx = 1.0d;
+		c.weighty = 1.0d;
+		c.insets = new Insets(3, 3, 3, 5);
+		c.gridx = 1;
+		c.gridy = 12;
 		add(statusText, c);
 
 		c = new GridBagConstraints();
@@ -354,7 +416,7 @@ public class PluginWindow extends JFrame {
 		c.gridwidth = 2;
 		c.insets = new Insets(3, 5, 5, 5);
 		c.gridx = 0;
-		c.gridy = 11;
+		c.gridy = 13;
 		add(startStopButton, c);
 	}
 
@@ -386,6 +448,8 @@ public class PluginWindow extends JFrame {
 		noiseFloorSlider.addChangeListener(e -> updateNoiseFloor());
 		volumeNormalizationTypeSelect.addActionListener(e -> updateVolumeNormalization());
 		bucketNormalizationTypeSelect.addActionListener(e -> updateBucketNormalization());
+		windowTypeSelect.addActionListener(e -> updateWindowType());
+		fftTypeSelect.addActionListener(e -> updateFftType());
 		startStopButton.addActionListener(event -> onStartStopPressed());
 	}
 
@@ -455,6 +519,20 @@ public class PluginWindow extends JFrame {
 		}
 	}
 
+	private final void updateWindowType() {
+		final WindowTypeListEntry entry = (WindowTypeListEntry) windowTypeSelect.getSelectedItem();
+		if (entry != null) {
+			plugin.getSettings().windowType = entry.getType();
+		}
+	}
+
+	private final void updateFftType() {
+		final FftTypeListEntry entry = (FftTypeListEntry) fftTypeSelect.getSelectedItem();
+		if (entry != null) {
+			plugin.getSettings().fftType = entry.getType();
+		}
+	}
+
 	public void applySettings() {
 		final Settings settings = plugin.getSettings();
 
@@ -496,11 +574,24 @@ public class PluginWindow extends JFrame {
 				bucketNormalizationTypeSelect.setSelectedItem(entry);
 			}
 		}
+		for (int index = 0; index < windowTypeSelect.getItemCount(); index++) {
+			final WindowTypeListEntry entry = windowTypeSelect.getItemAt(index);
+			if (entry.getType().equals(settings.windowType)) {
+				windowTypeSelect.setSelectedItem(entry);
+			}
+		}
+		for (int index = 0; index < fftTypeSelect.getItemCount(); index++) {
+			final FftTypeListEntry entry = fftTypeSelect.getItemAt(index);
+			if (entry.getType().equals(settings.fftType)) {
+				fftTypeSelect.setSelectedItem(entry);
+			}
+		}
 	}
 
 	public final void registerEventHandler() {
 		plugin.getFftService().addStatusListener(status -> updateStatusField());
 		plugin.getVtsService().addStatusListener(status -> updateStatusField());
+		statusTimer.start();
 
 		plugin.getFftService().addAudioDeviceListener(() -> {
 			final List<FftService.DeviceInfo> devices = plugin.getFftService().getAudioDevices();
@@ -542,6 +633,7 @@ public class PluginWindow extends JFrame {
 		// Unlike many other single-threaded applications that freeze when
 		// clicking buttons.
 		case Connected:
+		case Reconnecting:
 			new Thread(() -> {
 				runOrShowError(() -> fftService.stop(), "Could not stop Audio Device: ");
 				runOrShowError(() -> vtsService.disconnect(), "Could not stop connection with VTS API: ");
@@ -571,9 +663,15 @@ public class PluginWindow extends JFrame {
 		final VtsService.Status vtsStatus = vtsService.getConnectionStatus();
 		final FftService.Status fftStatus = fftService.getConnectionStatus();
 
+		// Show the latency from the audio device to VTS (p50 / p99 / max) as soon as there are values.
+		final LatencyStats.Histogram latency = vtsService.getLatencyStats().getHistogram(LatencyStats.Stage.Total);
+		final String latencyText = (latency.getCount() == 0) ? "" : String.format(", Latency: %.0f / %.0f / %.0f ms",
+				latency.getPercentile(0.5d) / 1000000.0d, latency.getPercentile(0.99d) / 1000000.0d, latency.getMax() / 1000000.0d);
+
 		EventQueue.invokeLater(() -> {
-			statusText.setText(String.format("VTS Connection: %s, Audio Device: %s", vtsStatus.name(), fftStatus.name()));
-			startStopButton.setEnabled(vtsStatus == VtsService.Status.Disconnected || vtsStatus == VtsService.Status.Connected);
+			statusText.setText(String.format("VTS Connection: %s, Audio Device: %s%s", vtsStatus.name(), fftStatus.name(), latencyText));
+			startStopButton.setEnabled(vtsStatus == VtsService.Status.Disconnected || vtsStatus == VtsService.Status.Connected
+					|| vtsStatus == VtsService.Status.Reconnecting);
 			connectionUrlField.setEnabled(vtsStatus == VtsService.Status.Disconnected);
 			bucketsTextField.setEnabled(vtsStatus == VtsService.Status.Disconnected);
 			audioDevicesSelect.setEnabled(vtsStatus == VtsService.Status.Disconnected);
@@ -581,6 +679,7 @@ public class PluginWindow extends JFrame {
 			startFrequencyTextField.setEnabled(vtsStatus == VtsService.Status.Disconnected);
 			endFrequencyTextField.setEnabled(vtsStatus == VtsService.Status.Disconnected);
 			bucketNormalizationTypeSelect.setEnabled(vtsStatus == VtsService.Status.Disconnected);
+			fftTypeSelect.setEnabled(vtsStatus == VtsService.Status.Disconnected);
 
 			switch (vtsStatus) {
 			case Disconnected:
@@ -590,6 +689,7 @@ public class PluginWindow extends JFrame {
 				startStopButton.setText("Connecting");
 				break;
 			case Connected:
+			case Reconnecting:
 				startStopButton.setText("Disconnect");
 				break;
 			case Disconnecting:
@@ -709,4 +809,68 @@ public class PluginWindow extends JFrame {
 
 	}
 
+	private static class WindowTypeListEntry {
+
+		private final WindowType windowType;
+
+		public WindowTypeListEntry(WindowType windowType) {
+			this.windowType = windowType;
+		}
+
+		public WindowType getType() {
+			return windowType;
+		}
+
+		@Override
+		public String toString() {
+			switch (windowType) {
+			case NONE:
+				return "None";
+			case HAMMING:
+				return "Hamming";
+			case HANN:
+				return "Hann";
+			case NUTTALL:
+				return "Nuttall";
+			case BLACKMAN_HARRIS:
+				return "Blackman-Harris";
+			default:
+				return "Unknown";
+			}
+		}
+
+	}
+
+	private static class FftTypeListEntry {
+
+		private final FftType fftType;
+
+		public FftTypeListEntry(FftType fftType) {
+			this.fftType = fftType;
+		}
+
+		public FftType getType() {
+			return fftType;
+		}
+
+		@Override
+		public String toString() {
+			switch (fftType) {
+			case SINGLE_FFT:
+				return "Single FFT";
+			case MULTI_FFT:
+				return "Multi FFT";
+			case MULTIRATE_FFT:
+				return "Multirate FFT";
+			case SGDFT:
+				return "Sliding DFT";
+			case CONSTANT_Q:
+				return "Constant-Q";
+			default:
+				return "Unknown";
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,156 @@
+package me.yuzu.vts.fft;
+
+public class RealFftEngine implements FftEngine {
+
+	// One plan for each power of two (index is the logarithm of the transformation size).
+	private final Plan[] plans;
+	private final DspKernels kernels;
+
+	public RealFftEngine() {
+		this(DspKernels.getDefault());
+	}
+
+	public RealFftEngine(DspKernels kernels) {
+		this.plans = new Plan[31];
+		this.kernels = kernels;
+	}
+
+	// Creates the twiddle tables and buffers for the size in advance such that
+	// the first transformation does not need to allocate anything.
+	public final void prepare(int size) {
+		getPlan(size);
+	}
+
+	@Override
+	public final void magnitudes(double[] input, double[] output) {
+		final Plan plan = getPlan(input.length);
+		transform(input, plan.spectrumRe, plan.spectrumIm);
+		kernels.magnitudes(plan.spectrumRe, plan.spectrumIm, output, plan.half);
+	}
+
+	@Override
+	public final void transform(double[] input, double[] real, double[] imaginary) {
+		final Plan plan = getPlan(input.length);
+		transformPacked(input, plan);
+
+		final int half = plan.half;
+		final double[] re = plan.re;
+		final double[] im = plan.im;
+		final double[] cos = plan.cos;
+		final double[] sin = plan.sin;
+
+		// Split the complex spectrum back into the spectrum of the real input.
+		// Z[k] = E[k] + i * O[k] where E and O are the spectra of the even and odd samples
+		// and X[k] = E[k] + W(N)^k * O[k].
+		for (int bin = 0; bin < half; bin++) {
+			final int mirror = (half - bin) & (half - 1);
+			final double a = re[bin];
+			final double b = im[bin];
+			final double c = re[mirror];
+			final double d = im[mirror];
+
+			final double evenRe = 0.5d * (a + c);
+			final double evenIm = 0.5d * (b - d);
+			final double oddRe = 0.5d * (b + d);
+			final double oddIm = 0.5d * (c - a);
+
+			final double wr = cos[bin];
+			final double wi = -sin[bin];
+			real[bin] = evenRe + wr * oddRe - wi * oddIm;
+			imaginary[bin] = evenIm + wr * oddIm + wi * oddRe;
+		}
+	}
+
+	private final void transformPacked(double[] input, Plan plan) {
+		final int half = plan.half;
+		final double[] re = plan.re;
+		final double[] im = plan.im;
+		final double[] cos = plan.cos;
+		final double[] sin = plan.sin;
+
+		// A real valued input of size N is packed into a complex input of size N / 2 by
+		// using the even samples as real part and the odd samples as imaginary part.
+		// The samples are directly stored in the bit reversed order that is required by
+		// the iterative radix-2 algorithm below.
+		final int[] reverse = plan.reverse;
+		for (int index = 0; index < half; index++) {
+			final int target = reverse[index];
+			re[target] = input[2 * index];
+			im[target] = input[2 * index + 1];
+		}
+
+		// Iterative in-place radix-2 decimation in time FFT of size N / 2.
+		// The twiddle tables are stored for size N and therefore the stride through
+		// the tables is N / length for each butterfly length.
+		final int size = input.length;
+		for (int length = 2; length <= half; length <<= 1) {
+			final int span = length >> 1;
+			final int stride = size / length;
+			for (int start = 0; start < half; start += length) {
+				for (int offset = 0; offset < span; offset++) {
+					final double wr = cos[offset * stride];
+					final double wi = -sin[offset * stride];
+					final int a = start + offset;
+					final int b = a + span;
+					final double tr = re[b] * wr - im[b] * wi;
+					final double ti = re[b] * wi + im[b] * wr;
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	private final Plan getPlan(int size) {
+		if (size < 2 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size has to be a power of two: " + size);
+		}
+
+		final int order = Integer.numberOfTrailingZeros(size);
+		Plan plan = plans[order];
+		if (plan == null) {
+			plan = new Plan(size);
+			plans[order] = plan;
+		}
+
+		return plan;
+	}
+
+	private static class Plan {
+
+		private final int half;
+		private final int[] reverse;
+		private final double[] cos;
+		private final double[] sin;
+		private final double[] re;
+		private final double[] im;
+		private final double[] spectrumRe;
+		private final double[] spectrumIm;
+
+		public Plan(int size) {
+			this.half = size / 2;
+			this.reverse = new int[half];
+			this.cos = new double[half];
+			this.sin = new double[half];
+			this.re = new double[half];
+			this.im = new double[half];
+			this.spectrumRe = new double[half];
+			this.spectrumIm = new double[half];
+
+			// Twiddle factors for the full size N, the complex FFT of size N / 2 uses every second one.
+			for (int index = 0; index < half; index++) {
+				cos[index] = Math.cos(2.0d * Math.PI * index / size);
+				sin[index] = Math.sin(2.0d * Math.PI * index / size);
+			}
+
+			final int bits = Integer.numberOfTrailingZeros(half);
+			for (int index = 0; index < half; index++) {
+				reverse[index] = (bits == 0) ? 0 : (Integer.reverse(index) >>> (32 - bits));
+			}
+		}
+
+	}
+
+}
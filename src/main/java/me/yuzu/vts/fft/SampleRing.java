@@ -0,0 +1,162 @@
+package me.yuzu.vts.fft;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class SampleRing {
+
+	// Ring buffer of the converted audio samples of each channel. The writer is the capture thread
+	// and the reader is the analysis thread. Both sequences count frames and only increase,
+	// the index of a frame is the sequence modulo the capacity.
+	private final int capacity;
+	private final int mask;
+	private final float[][] samples;
+	private final AtomicLong written;
+	private final AtomicLong read;
+
+	// The capture time of the newest frame that has been written. The version is odd while the
+	// writer updates the time such that the reader never sees the sequence of one write with the time of another.
+	private volatile long captureVersion;
+	private volatile long captureSequence;
+	private volatile long captureTime;
+
+	private final AtomicLong overruns;
+	private final AtomicLong underruns;
+
+	// The thread that waits for new samples, null if nobody is waiting.
+	private volatile Thread waiter;
+
+	// Creates a ring for the channels. The capacity has to be a power of two.
+	public SampleRing(int channels, int capacity) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity has to be a power of two: " + capacity);
+		}
+
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.samples = new float[channels][capacity];
+		this.written = new AtomicLong(0);
+		this.read = new AtomicLong(0);
+		this.captureVersion = 0;
+		this.captureSequence = 0;
+		this.captureTime = 0;
+		this.overruns = new AtomicLong(0);
+		this.underruns = new AtomicLong(0);
+		this.waiter = null;
+	}
+
+	// The samples of each channel. The writer fills the frames starting at getWriteIndex()
+	// before publishing them and the reader only reads frames that have been published.
+	public final float[][] getSamples() {
+		return samples;
+	}
+
+	public final int getCapacity() {
+		return capacity;
+	}
+
+	public final int getIndex(long sequence) {
+		return (int) (sequence & mask);
+	}
+
+	public final int getWriteIndex() {
+		return getIndex(written.get());
+	}
+
+	// Makes the frames that have been filled visible to the reader. The capture time belongs to the
+	// newest of the frames. Must only be called by the writer.
+	public final void publish(int frames, long time) {
+		final long sequence = written.get() + frames;
+
+		captureVersion++;
+		captureSequence = sequence;
+		captureTime = time;
+		captureVersion++;
+
+		written.set(sequence);
+
+		final Thread thread = waiter;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	// Number of frames that have been published.
+	public final long getWritten() {
+		return written.get();
+	}
+
+	// Number of frames that the reader is done with.
+	public final long getRead() {
+		return read.get();
+	}
+
+	// Marks all frames before the sequence as processed. Must only be called by the reader.
+	public final void setRead(long sequence) {
+		read.set(sequence);
+	}
+
+	// Waits until the frames before the sequence have been published. Returns false if the timeout
+	// has passed or the thread has been interrupted.
+	public final boolean await(long sequence, long timeout, TimeUnit unit) {
+		if (written.get() >= sequence) {
+			return true;
+		}
+
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		waiter = Thread.currentThread();
+		try {
+			while (true) {
+				// Check again after registering as waiter such that no wake up is lost.
+				if (written.get() >= sequence) {
+					return true;
+				}
+
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+				LockSupport.parkNanos(this, remaining);
+			}
+		} finally {
+			waiter = null;
+		}
+	}
+
+	// Returns the time (System.nanoTime) when the frame before the sequence has been recorded.
+	// The time is derived from the capture time of the newest published frame.
+	public final long getCaptureTime(long sequence, float frameRate) {
+		long version;
+		long newestSequence;
+		long newestTime;
+		do {
+			version = captureVersion;
+			newestSequence = captureSequence;
+			newestTime = captureTime;
+		} while ((version & 1) != 0 || version != captureVersion);
+
+		return newestTime - (long) ((newestSequence - sequence) / frameRate * 1000000000.0d);
+	}
+
+	// Called by the reader if samples have been overwritten before they have been processed.
+	public final void countOverrun() {
+		overruns.incrementAndGet();
+	}
+
+	// Called by the reader if it had to wait much longer for samples than expected.
+	public final void countUnderrun() {
+		underruns.incrementAndGet();
+	}
+
+	// Returns how often the analysis fell so far behind that it had to skip samples.
+	public final long getOverruns() {
+		return overruns.get();
+	}
+
+	// Returns how often the analysis had to wait for the audio device for more than two windows.
+	public final long getUnderruns() {
+		return underruns.get();
+	}
+
+}
@@ -0,0 +1,45 @@
+package me.yuzu.vts.fft;
+
+public class ScalarKernels implements DspKernels {
+
+	@Override
+	public void window(float[] input, int inputOffset, double[] window, double[] output, int outputOffset, int count) {
+		for (int index = 0; index < count; index++) {
+			output[outputOffset + index] = input[inputOffset + index] * window[outputOffset + index];
+		}
+	}
+
+	@Override
+	public void magnitudes(double[] real, double[] imaginary, double[] output, int count) {
+		for (int index = 0; index < count; index++) {
+			output[index] = Math.sqrt(real[index] * real[index] + imaginary[index] * imaginary[index]);
+		}
+	}
+
+	@Override
+	public double weightedSum(double[] values, int[] indices, float[] weights, int from, int to) {
+		double sum = 0.0d;
+		for (int index = from; index < to; index++) {
+			sum += weights[index] * values[indices[index]];
+		}
+		return sum;
+	}
+
+	@Override
+	public void convertPcm16(byte[] input, int inputOffset, float[] output, int outputOffset, int count) {
+		// Signed PCM 16 bit little-endian: [sbyte][byte]
+		for (int index = 0; index < count; index++) {
+			final int offset = inputOffset + 2 * index;
+			output[outputOffset + index] = (float) (
+					((0xFF & ((int) input[offset]) <<  0)) |
+					((       ((int) input[offset + 1]) <<  8))
+				) / (128.0f * 256.0f);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+}
@@ -1,12 +1,15 @@
 package me.yuzu.vts.fft;
 
 import me.yuzu.vts.fft.FftService.BucketType;
+import me.yuzu.vts.fft.FftService.FftType;
 import me.yuzu.vts.fft.FftService.OutputType;
+import me.yuzu.vts.fft.FftService.WindowType;
 
 public class Settings {
 
 	public volatile String connectionUrl = "ws://localhost:8001";
 	public volatile String authenticationToken = "";
+	public volatile String vtsParameterLayout = "";
 
 	public volatile String audioDevice = "";
 	public volatile boolean stereo = false;
@@ -17,5 +20,23 @@ public class Settings {
 	public volatile double noiseFloor = 0.0001d;
 	public volatile OutputType outputType = OutputType.LOGARITHMIC;
 	public volatile BucketType bucketType = BucketType.LINEAR;
+	public volatile WindowType windowType = WindowType.NUTTALL;
+	public volatile FftType fftType = FftType.MULTI_FFT;
+	public volatile int fftUpdateOverlap = 8;
+	public volatile boolean parallelAnalysis = false;
+	public volatile int hopSize = 1024;
+	public volatile int peakHalfLife = 300;
+	public volatile int outputRate = 0;
+	public volatile int outputAttack = 0;
+	public volatile int outputRelease = 50;
+	public volatile boolean lowLatency = false;
+	public volatile int vtsQueueSize = 1;
+	public volatile int vtsMaxInFlight = 4;
+	public volatile int vtsRequestTimeout = 5000;
+	public volatile double vtsChangeThreshold = 0.0d;
+	public volatile double vtsQuantization = 0.0d;
+	public volatile int vtsKeepAlive = 500;
+	public volatile boolean vtsAutoReconnect = true;
+	public volatile int vtsReconnectMaxDelay = 10000;
 
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package me.yuzu.vts.fft;
+
+public class SlidingDftEngine {
+
+	// Damping factor of the recursion. Moves the poles of the resonators slightly inside
+	// the unit circle such that rounding errors decay instead of accumulating forever.
+	private static final double DAMPING = 0.99999d;
+
+	private final int bands;
+	private final int[] lengths;
+	private final double[] twiddleRe;
+	private final double[] twiddleIm;
+	private final double[] combRe;
+	private final double[] combIm;
+	private final int[] resyncCounters;
+	private final int resyncInterval;
+
+	private final double[] stateRe;
+	private final double[] stateIm;
+
+	// Creates one resonator for each band. Each band is analyzed with a window length that is
+	// inversely proportional to its bandwidth and exactly at its center frequency, which does not
+	// have to be a bin of the window length. The comb filter removes the leaving sample with the phase
+	// it has accumulated over the window such that it cancels for any frequency.
+	// The window lengths must not exceed the input history minus the samples processed at once.
+	public SlidingDftEngine(float frameRate, double[] centerFrequencies, double[] bandwidths, int maxLength) {
+		this.bands = centerFrequencies.length;
+		this.lengths = new int[bands];
+		this.twiddleRe = new double[bands];
+		this.twiddleIm = new double[bands];
+		this.combRe = new double[bands];
+		this.combIm = new double[bands];
+		this.resyncCounters = new int[bands];
+		this.stateRe = new double[bands];
+		this.stateIm = new double[bands];
+
+		// Recompute the sums directly once per second to remove the remaining drift.
+		this.resyncInterval = Math.max(1, (int) frameRate);
+
+		for (int band = 0; band < bands; band++) {
+			final int length = (int) Math.max(16, Math.min(maxLength, Math.round(frameRate / bandwidths[band])));
+			final double omega = 2.0d * Math.PI * Math.min(centerFrequencies[band], frameRate / 2.0d) / frameRate;
+
+			// The comb factor is r^N * W^N with W = e^(i * omega) which is only real if omega is a bin.
+			lengths[band] = length;
+			twiddleRe[band] = Math.cos(omega);
+			twiddleIm[band] = Math.sin(omega);
+			combRe[band] = Math.pow(DAMPING, length) * Math.cos(omega * length);
+			combIm[band] = Math.pow(DAMPING, length) * Math.sin(omega * length);
+
+			// Spread the resynchronization of the bands over time so not all are done in the same call.
+			resyncCounters[band] = (int) ((long) resyncInterval * band / bands);
+		}
+	}
+
+	public final int getBands() {
+		return bands;
+	}
+
+	public final int getLength(int band) {
+		return lengths[band];
+	}
+
+	// Processes the new samples input[start] to input[start + count - 1] of the ring buffer.
+	// Older samples in the ring buffer are used to remove the samples leaving the window.
+	public final void process(float[] input, int start, int count) {
+		final int inputLength = input.length;
+
+		for (int band = 0; band < bands; band++) {
+			final int length = lengths[band];
+			final double wr = twiddleRe[band];
+			final double wi = twiddleIm[band];
+			final double cr = combRe[band];
+			final double ci = combIm[band];
+			double re = stateRe[band];
+			double im = stateIm[band];
+			int counter = resyncCounters[band];
+
+			for (int offset = 0; offset < count; offset++) {
+				final int index = (start + offset) % inputLength;
+
+				if (++counter >= resyncInterval) {
+					counter = 0;
+					resync(input, index, band);
+					re = stateRe[band];
+					im = stateIm[band];
+					continue;
+				}
+
+				// S(n) = W * (r * S(n - 1) + x(n) - r^N * W^N * x(n - N)) with W = e^(i * omega)
+				// which keeps S(n) = W * sum((r * W)^k * x(n - k)) for k = 0 to N - 1.
+				final double leaving = input[(index - length + inputLength) % inputLength];
+				final double tr = DAMPING * re + input[index] - cr * leaving;
+				final double ti = DAMPING * im - ci * leaving;
+				re = wr * tr - wi * ti;
+				im = wi * tr + wr * ti;
+			}
+
+			stateRe[band] = re;
+			stateIm[band] = im;
+			resyncCounters[band] = counter;
+		}
+	}
+
+	// Returns the magnitude of the band normalized by its window length, which is half the amplitude of
+	// a sine at the center frequency independent of the bandwidth of the band.
+	public final double getMagnitude(int band) {
+		return Math.sqrt(stateRe[band] * stateRe[band] + stateIm[band] * stateIm[band]) / lengths[band];
+	}
+
+	private final void resync(float[] input, int index, int band) {
+		// Evaluates the sum of the window ending at the input index directly.
+		final int inputLength = input.length;
+		final int length = lengths[band];
+		final double stepRe = DAMPING * twiddleRe[band];
+		final double stepIm = DAMPING * twiddleIm[band];
+
+		double powerRe = twiddleRe[band];
+		double powerIm = twiddleIm[band];
+		double re = 0.0d;
+		double im = 0.0d;
+		for (int offset = 0; offset < length; offset++) {
+			final double value = input[(index - offset + inputLength) % inputLength];
+			re += powerRe * value;
+			im += powerIm * value;
+
+			final double nextRe = powerRe * stepRe - powerIm * stepIm;
+			powerIm = powerRe * stepIm + powerIm * stepRe;
+			powerRe = nextRe;
+		}
+
+		stateRe[band] = re;
+		stateIm[band] = im;
+	}
+
+}
@@ -1,13 +1,33 @@
 package me.yuzu.vts.fft;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
@@ -15,7 +35,6 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
@@ -24,6 +43,11 @@ import me.yuzu.vts.fft.FftService.FftData;
 
 public class VtsService {
 
+	private static final String[] PARAMETER_TYPES = { "Level", "Peak" };
+	private static final int MAX_MESSAGE_SIZE = 1024 * 1024;
+	private static final long RECONNECT_MIN_DELAY = 250;
+	private static final long TIMEOUT_SWEEP_INTERVAL = 50;
+
 	private final List<StatusListener> statusListener;
 	private final Gson gson;
 
@@ -33,9 +57,10 @@ public class VtsService {
 	private volatile Thread connectionThread;
 	private volatile IOException connectionError;
 
-	private final Queue<FftData> handlerQueue;
-	private volatile HandlerStatus handlerStatus;
-	private volatile Settings handlerSettings;
+	private volatile FftDataMailbox handlerMailbox;
+	private final AtomicLong requestIds;
+
+	private final LatencyStats latencyStats;
 
 	public VtsService() {
 		this.statusListener = new ArrayList<>();
@@ -46,28 +71,35 @@ public class VtsService {
 		this.connectionThread = null;
 		this.connectionError = null;
 
-		this.handlerQueue = new LinkedList<>();
-		this.handlerStatus = HandlerStatus.Initializing;
-		this.handlerSettings = null;
+		this.handlerMailbox = new FftDataMailbox(1);
+		this.requestIds = new AtomicLong(0);
+
+		this.latencyStats = new LatencyStats();
 	}
 
 	public Status getConnectionStatus() {
 		return connectionStatus;
 	}
 
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
 	public final void connect(Settings settings) throws IOException {
 		synchronized (connectionLock) {
 			// Finalize existing connection attempts.
 			if (connectionLock == Status.Disconnecting) {
 				waitWhileConnectionStatusIs(Status.Disconnecting);
-			} else if (connectionStatus == Status.Connecting || connectionStatus == Status.Connected) {
+			} else if (connectionStatus == Status.Connecting || connectionStatus == Status.Connected || connectionStatus == Status.Reconnecting) {
 				setConnectionStatus(Status.Disconnecting);
 				connectionThread.interrupt();
 				waitWhileConnectionStatusIs(Status.Disconnecting);
 			}
 
 			// Clear old data first.
-			handlerQueue.clear();
+			handlerMailbox.clear();
+			handlerMailbox = new FftDataMailbox(settings.vtsQueueSize);
+			latencyStats.reset();
 
 			// Now connect to VTube Studio in another thread.
 			setConnectionStatus(Status.Connecting);
@@ -88,7 +120,7 @@ public class VtsService {
 			// Wait for older disconnect / connect attempts to finish.
 			if (connectionStatus == Status.Disconnecting) {
 				waitWhileConnectionStatusIs(Status.Disconnecting);
-			} else if (connectionStatus == Status.Connecting || connectionStatus == Status.Connected) {
+			} else if (connectionStatus == Status.Connecting || connectionStatus == Status.Connected || connectionStatus == Status.Reconnecting) {
 				// Start a disconnect attempt.
 				setConnectionStatus(Status.Disconnecting);
 				connectionThread.interrupt();
@@ -105,20 +137,23 @@ public class VtsService {
 	}
 
 	public final void queueFftData(FftData fftData) {
-		// Clear old queue values if we are disconnected
-		synchronized (connectionLock) {
-			if (connectionStatus != Status.Connected) {
-				handlerQueue.clear();
-				return;
-			}
-
-			// Notify the handler about the new data.
-			handlerQueue.add(fftData);
-			if (handlerStatus == HandlerStatus.WaitForFftData) {
-				handlerStatus = HandlerStatus.InjectFftData;
-			}
-			connectionLock.notifyAll();
+		// This is called by the thread of the FFT service and must never wait for the network
+		// or the connection lock. The mailbox only keeps the newest values and wakes up the sender.
+		final FftDataMailbox mailbox = handlerMailbox;
+
+		// Clear old queue values if we are disconnected. While reconnecting only the latest
+		// values are kept such that they are sent as soon as the connection is back.
+		final Status status = connectionStatus;
+		if (status == Status.Reconnecting) {
+			mailbox.clear();
+		} else if (status != Status.Connected) {
+			mailbox.clear();
+			return;
 		}
+
+		// The data is kept until VTS acknowledged it.
+		fftData.setEnqueueTime(System.nanoTime());
+		mailbox.offer(fftData.retain());
 	}
 
 	private final void waitWhileConnectionStatusIs(Status status) {
@@ -132,7 +167,72 @@ public class VtsService {
 	}
 
 	private final void run(Settings settings) {
+		IOException exception = null;
+
+		try {
+			int reconnectAttempt = 0;
+			while (true) {
+				exception = runSession(settings);
+
+				synchronized (connectionLock) {
+					// Stop if the user disconnected, if the first connection attempt failed
+					// (the user gets the error instead) or if reconnecting is disabled.
+					// VTS refusing the plugin or answering with something unexpected would only
+					// happen again, so only a lost connection or a timeout is worth another attempt.
+					if (exception == null || exception instanceof VtsProtocolException || connectionStatus == Status.Connecting
+							|| connectionStatus == Status.Disconnecting || !settings.vtsAutoReconnect) {
+						break;
+					}
+
+					// Start with a short delay again if the connection has been established in between.
+					if (connectionStatus == Status.Connected) {
+						reconnectAttempt = 0;
+						setConnectionStatus(Status.Reconnecting);
+					}
+				}
+
+				// The audio device keeps running and only the latest values are kept in the meantime.
+				// A disconnect by the user interrupts the wait.
+				final long reconnectDelay = getReconnectDelay(settings, reconnectAttempt++);
+				System.out.println(String.format("Lost the connection to the VTS API (%s), reconnecting in %d ms", exception.getMessage(), reconnectDelay));
+				Thread.sleep(reconnectDelay);
+			}
+		} catch (InterruptedException interruptedException) {
+			exception = null;
+		} finally {
+			// Print the statistics of this connection to the console.
+			if (latencyStats.getHistogram(LatencyStats.Stage.Total).getCount() > 0) {
+				latencyStats.dump();
+			}
+			if (handlerMailbox.getCoalesced() > 0) {
+				System.out.println(String.format("%d FFT frames were replaced by newer ones before they could be sent to VTS", handlerMailbox.getCoalesced()));
+			}
+
+			// Notify the other thread about the connection change.
+			synchronized (connectionLock) {
+				if (connectionStatus != Status.Disconnected) {
+					connectionThread = null;
+					connectionError = exception;
+					setConnectionStatus(Status.Disconnected);
+					connectionLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	// Returns the delay before the next reconnect attempt. The delay doubles with every failed attempt
+	// up to the maximum and a random part spreads the attempts of multiple plugins when VTS restarts.
+	private static final long getReconnectDelay(Settings settings, int attempt) {
+		final long maxDelay = Math.max(RECONNECT_MIN_DELAY, settings.vtsReconnectMaxDelay);
+		final long delay = Math.min(maxDelay, RECONNECT_MIN_DELAY << Math.min(attempt, 20));
+		return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+	}
+
+	// Runs a single connection until it is closed. Returns the error that closed the connection
+	// or null if the user closed the connection.
+	private final IOException runSession(Settings settings) {
 		WebSocketSession webSocketSession = null;
+		VtsClient client = null;
 		IOException exception = null;
 
 		try {
@@ -146,9 +246,14 @@ public class VtsService {
 				}
 			}
 
-			final Handler handler = new Handler();
-			final StandardWebSocketClient webSocketClient = new StandardWebSocketClient();
+			client = new VtsClient();
+			final Handler handler = new Handler(client);
+			// The list of all parameters in VTS is much larger than the default message buffer.
+			final WebSocketContainer webSocketContainer = ContainerProvider.getWebSocketContainer();
+			webSocketContainer.setDefaultMaxTextMessageBufferSize(MAX_MESSAGE_SIZE);
+			final StandardWebSocketClient webSocketClient = new StandardWebSocketClient(webSocketContainer);
 			webSocketSession = webSocketClient.doHandshake(handler, settings.connectionUrl).get();
+			client.setSession(webSocketSession);
 
 			synchronized (connectionLock) {
 				// Check if the connection attempt was already cancelled.
@@ -162,208 +267,105 @@ public class VtsService {
 				}
 			}
 
-			synchronized (connectionLock) {
-				handlerSettings = settings;
-				handlerStatus = HandlerStatus.Initializing;
-			}
-
 			final int channels = settings.stereo ? 2 : 1;
 			final int buckets = settings.fftBuckets;
 			final float startFrequency = settings.frequencyStart;
 			final float endFrequency = settings.frequencyEnd;
+			final long requestTimeout = Math.max(1, settings.vtsRequestTimeout);
 
-			// This is an interlocking state machine for sending messages to VTS.
-			// The handler receives responses from VTS and informs this thread with the response.
-			// TODO: Change into asynchronous API at some point in time.
-			boolean terminate = false;
-			int createParameterBucket = 0;
-			int createParameterChannel = 0;
-			int createParameterType = 0;
-			while (!Thread.interrupted() && !terminate && connectionStatus != Status.Disconnecting) {
-				synchronized (connectionLock) {
-					switch (handlerStatus) {
-					case Initializing:
-						// Depending if we have an old authentication token try to connect with that first.
-						handlerStatus = (settings.authenticationToken == null || settings.authenticationToken.isEmpty())
-							? HandlerStatus.AuthenticationTokenRequest
-							: HandlerStatus.AuthenticationRequest;
-						break;
-
-					case AuthenticationTokenRequest:
-					{
-						// We have no token saved so acquire a new one.
-						final JsonObject jsonData = new JsonObject();
-						jsonData.addProperty("pluginName", Plugin.getPluginName());
-						jsonData.addProperty("pluginDeveloper", Plugin.getPluginDeveloper());
-						jsonData.addProperty("pluginIcon", Plugin.getPluginIconBase64());
-						webSocketSession.sendMessage(createVtsJsonMessage("AuthenticationTokenRequest", jsonData));
-						waitWhileHandlerStatusIs(HandlerStatus.AuthenticationTokenRequest);
-						break;
-					}
-
-					case AuthenticationRequest:
-					{
-						// There has been a token saved so try this one first.
-						final JsonObject jsonData = new JsonObject();
-						jsonData.addProperty("pluginName", Plugin.getPluginName());
-						jsonData.addProperty("pluginDeveloper", Plugin.getPluginDeveloper());
-						jsonData.addProperty("pluginIcon", Plugin.getPluginIconBase64());
-						jsonData.addProperty("authenticationToken", settings.authenticationToken);
-						webSocketSession.sendMessage(createVtsJsonMessage("AuthenticationRequest", jsonData));
-						waitWhileHandlerStatusIs(HandlerStatus.AuthenticationRequest);
-						break;
-					}
+			// Every request returns a future that is completed by the handler when the response
+			// with the same request id arrives. The authentication waits for each response, the
+			// parameter creation and the data injection keep multiple requests in flight.
+			authenticate(client, settings, requestTimeout);
 
-					case AuthenticationDenied:
-						// The user denied the request, so stop the connection.
-						handlerStatus = HandlerStatus.Terminated;
-						exception = new IOException("User has denied the API connection!");
-						terminate = true;
-						break;
-
-					case Authenticated:
-						// We are authenticated so create the required parameters.
-						handlerStatus = HandlerStatus.CreateTrackingParameters;
-						break;
+			// We are authenticated so create the required parameters.
+			createParameters(client, settings, channels, buckets, startFrequency, endFrequency, requestTimeout);
 
-					case CreateTrackingParameters:
-					{
-						final String type = (createParameterType == 0) ? "Level" : "Peak";
-						final String channel = createChannelName(createParameterChannel, channels);
-
-						final JsonObject jsonData = new JsonObject();
-						jsonData.addProperty("parameterName", String.format("FrequencyRange%d%s%s", createParameterBucket + 1, channel, type));
-						jsonData.addProperty("explanation", createTrackingParameterDescription(createParameterBucket + 1, buckets, startFrequency, endFrequency, type));
-						jsonData.addProperty("min", 0);
-						jsonData.addProperty("max", 50);
-						jsonData.addProperty("defaultValue", 0);
-						webSocketSession.sendMessage(createVtsJsonMessage("ParameterCreationRequest", jsonData));
-						waitWhileHandlerStatusIs(HandlerStatus.CreateTrackingParameters);
-						break;
-					}
+			synchronized (connectionLock) {
+				// Check if we still intend to connect.
+				if (connectionStatus != Status.Connecting && connectionStatus != Status.Reconnecting) {
+					return null;
+				}
+				setConnectionStatus(Status.Connected);
+				connectionLock.notifyAll();
+			}
 
-					case CreateTrackingParameterSuccessful:
-						// Toggle between "Level" and "Peak" parameter types.
-						createParameterType++;
-						if (createParameterType < 2) {
-							handlerStatus = HandlerStatus.CreateTrackingParameters;
-							break;
-						}
-
-						// Create "Level" and "Peak" for each bucket.
-						createParameterType = 0;
-						createParameterBucket++;
-						if (createParameterBucket < buckets) {
-							handlerStatus = HandlerStatus.CreateTrackingParameters;
-							break;
-						}
-
-						// Create "Level" and "Peak" for each bucket for each channel.
-						createParameterType = 0;
-						createParameterBucket = 0;
-						createParameterChannel++;
-						if (createParameterChannel < channels) {
-							handlerStatus = HandlerStatus.CreateTrackingParameters;
-							break;
-						}
-
-						handlerStatus = HandlerStatus.InitializationFinished;
-						break;
+			// Send the data to VTS without waiting for the responses. Up to the maximum number of
+			// requests can wait for a response at the same time and each response frees a place.
+			// The messages are written from a template where only the values change between two messages.
+			final FftDataMailbox mailbox = handlerMailbox;
+			final InjectParameterWriter injectWriter = new InjectParameterWriter(createParameterNames(channels, buckets));
+			final float[] injectValues = new float[injectWriter.getParameters()];
+			final boolean[] injectIncluded = new boolean[injectWriter.getParameters()];
+
+			// Optionally only send the values that changed visibly since they were sent last.
+			final ParameterChangeFilter injectFilter = new ParameterChangeFilter(injectValues.length,
+					settings.vtsChangeThreshold, settings.vtsQuantization, TimeUnit.MILLISECONDS.toNanos(settings.vtsKeepAlive));
+			final Semaphore inFlight = new Semaphore(Math.max(1, settings.vtsMaxInFlight));
+			final AtomicReference<IOException> injectError = new AtomicReference<>(null);
+			while (!Thread.interrupted() && connectionStatus != Status.Disconnecting && injectError.get() == null) {
+				// Notice a closed connection even if there are no values to send.
+				if (!webSocketSession.isOpen()) {
+					throw new IOException("The VTS API connection has been terminated!");
+				}
+				if (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+					continue;
+				}
 
-					case CreateTrackingParameterFailed:
-					{
-						final String type = (createParameterType == 0) ? "Level" : "Peak";
-						final String channel = createChannelName(createParameterChannel, channels);
+				// The wait is limited to notice a disconnect even if no new data arrives.
+				final FftData fftData = mailbox.poll(100, TimeUnit.MILLISECONDS);
+				if (fftData == null) {
+					inFlight.release();
+					continue;
+				}
 
-						handlerStatus = HandlerStatus.Terminated;
-						exception = new IOException(String.format("Could not create tracking parameter %s", String.format("FrequencyRange%d%s%s", createParameterBucket + 1, channel, type)));
-						terminate = true;
-						break;
+				// The values are stored in the same order as the parameter names.
+				int parameter = 0;
+				for (int channel = 0; channel < fftData.getChannels(); channel++) {
+					for (int bucket = 0; bucket < fftData.getBuckets(); bucket++) {
+						injectValues[parameter++] = fftData.getLevel(channel, bucket) * 50.0f;
+						injectValues[parameter++] = fftData.getPeak(channel, bucket) * 50.0f;
 					}
+				}
 
-					case InitializationFinished:
-						synchronized (connectionLock) {
-							// Check if we still intend to connect.
-							if (connectionStatus == Status.Connecting) {
-								setConnectionStatus(Status.Connected);
-								connectionLock.notifyAll();
-							} else {
-								terminate = true;
-								break;
-							}
-						}
-						handlerStatus = HandlerStatus.WaitForFftData;
-						break;
-
-					case WaitForFftData:
-						// If there is data to send then do it now.
-						if (!handlerQueue.isEmpty()) {
-							handlerStatus = HandlerStatus.InjectFftData;
-							break;
-						}
-
-						// While the queue is empty set this thread sleeping
-						// and wait for an update.
-						waitWhileHandlerStatusIs(HandlerStatus.WaitForFftData);
-						break;
+				// Nothing to send if no value changed. The place for a request is not needed then.
+				if (injectFilter.filter(injectValues, injectIncluded, System.nanoTime()) == 0) {
+					fftData.release();
+					inFlight.release();
+					continue;
+				}
 
-					case InjectFftData:
-					{
-						// We have some data to send, so convert it to JSON and
-						// forward it to VTube Studio.
-						final FftData fftData = handlerQueue.remove();
-
-						final JsonArray parameterValues = new JsonArray();
-						for (int channel = 0; channel < fftData.getChannels(); channel++) {
-							for (int bucket = 0; bucket < fftData.getBuckets(); bucket++) {
-								final String channelName = createChannelName(channel, fftData.getChannels());
-
-								final JsonObject levelParameter = new JsonObject();
-								levelParameter.addProperty("id", String.format("FrequencyRange%d%sLevel", bucket + 1, channelName));
-								levelParameter.addProperty("value", fftData.getLevel(channel, bucket) * 50.0f);
-								parameterValues.add(levelParameter);
-
-								final JsonObject peakParameter = new JsonObject();
-								peakParameter.addProperty("id", String.format("FrequencyRange%d%sPeak", bucket + 1, channelName));
-								peakParameter.addProperty("value", fftData.getPeak(channel, bucket) * 50.0f);
-								parameterValues.add(peakParameter);
-							}
-						}
-
-						final JsonObject jsonData = new JsonObject();
-						jsonData.add("parameterValues", parameterValues);
-						webSocketSession.sendMessage(createVtsJsonMessage("InjectParameterDataRequest", jsonData));
-						waitWhileHandlerStatusIs(HandlerStatus.InjectFftData);
-						break;
+				final long requestId = client.nextRequestId();
+				final TextMessage message = new TextMessage(injectWriter.write(requestId, injectValues, injectIncluded));
+				fftData.setSendTime(System.nanoTime());
+				final CompletableFuture<JsonObject> request;
+				try {
+					request = client.request(requestId, "InjectParameterDataRequest", message, requestTimeout);
+				} catch (IOException | RuntimeException sendException) {
+					// The response callback is never registered if sending fails, so give the data and the place back here.
+					fftData.release();
+					inFlight.release();
+					throw sendException;
+				}
+				request.whenComplete((response, error) -> {
+					if (error != null) {
+						injectError.compareAndSet(null, (error instanceof TimeoutException)
+								? new IOException("VTS did not answer the InjectParameterDataRequest in time!", error)
+								: new IOException("The VTS API connection has been terminated!", error));
+					} else if (!getMessageType(response).equals("InjectParameterDataResponse")) {
+						injectError.compareAndSet(null, new VtsProtocolException("VTS did not accept the VTS parameter values!"));
+					} else {
+						// Record how long the data took from the audio device until VTS accepted it.
+						fftData.setAckTime(System.nanoTime());
+						latencyStats.record(fftData);
 					}
+					fftData.release();
+					inFlight.release();
+				});
+			}
 
-					case InjectFftDataSuccessful:
-						// Check if we can directly continue because there is work.
-						// If not then set the thread to sleep and wait for work.
-						if (handlerQueue.isEmpty()) {
-							handlerStatus = HandlerStatus.WaitForFftData;
-						} else {
-							handlerStatus = HandlerStatus.InjectFftData;
-						}
-						break;
-
-					case InjectFftDataFailed:
-						handlerStatus = HandlerStatus.Terminated;
-						exception = new IOException("VTS did not accept the VTS parameter values!");
-						terminate = true;
-						break;
-
-					case InvalidResponse:
-						handlerStatus = HandlerStatus.Terminated;
-						exception = new IOException("VTS has sent an unexpected response!");
-						terminate = true;
-						break;
-
-					case Terminated:
-						terminate = true;
-						break;
-					}
-				}
+			if (injectError.get() != null) {
+				throw injectError.get();
 			}
 
 			webSocketSession.close();
@@ -381,31 +383,228 @@ public class VtsService {
 					webSocketSession.close();
 				} catch (IOException ioException) { }
 			}
+			if (client != null) {
+				client.close();
+			}
+		}
+		return exception;
+	}
 
-			// Notify the other thread about the connection change.
-			synchronized (connectionLock) {
-				if (connectionStatus != Status.Disconnected) {
-					connectionThread = null;
-					connectionError = exception;
-					setConnectionStatus(Status.Disconnected);
-					connectionLock.notifyAll();
+	private final void authenticate(VtsClient client, Settings settings, long requestTimeout) throws IOException, InterruptedException {
+		while (true) {
+			// Depending if we have an old authentication token try to connect with that first.
+			if (settings.authenticationToken == null || settings.authenticationToken.isEmpty()) {
+				// We have no token saved so acquire a new one.
+				// This waits without a timeout since the user has to allow the plugin in VTS first.
+				final JsonObject jsonData = new JsonObject();
+				jsonData.addProperty("pluginName", Plugin.getPluginName());
+				jsonData.addProperty("pluginDeveloper", Plugin.getPluginDeveloper());
+				jsonData.addProperty("pluginIcon", Plugin.getPluginIconBase64());
+				final JsonObject response = awaitResponse(client.request("AuthenticationTokenRequest", jsonData, 0), "AuthenticationTokenRequest");
+				if (getMessageType(response).equals("APIError")) {
+					// The user denied the request, so stop the connection.
+					throw new VtsProtocolException("User has denied the API connection!");
+				} else if (!getMessageType(response).equals("AuthenticationTokenResponse") || !getData(response).has("authenticationToken")) {
+					throw new VtsProtocolException("VTS has sent an unexpected response!");
+				}
+				settings.authenticationToken = getData(response).get("authenticationToken").getAsString();
+			}
+
+			// There has been a token saved so try this one first.
+			final JsonObject jsonData = new JsonObject();
+			jsonData.addProperty("pluginName", Plugin.getPluginName());
+			jsonData.addProperty("pluginDeveloper", Plugin.getPluginDeveloper());
+			jsonData.addProperty("pluginIcon", Plugin.getPluginIconBase64());
+			jsonData.addProperty("authenticationToken", settings.authenticationToken);
+			final JsonObject response = awaitResponse(client.request("AuthenticationRequest", jsonData, requestTimeout), "AuthenticationRequest");
+			if (getMessageType(response).equals("AuthenticationResponse") && getData(response).has("authenticated")) {
+				if (getData(response).get("authenticated").getAsBoolean()) {
+					return;
 				}
+			} else if (!getMessageType(response).equals("APIError")) {
+				throw new VtsProtocolException("VTS has sent an unexpected response!");
 			}
+
+			// Authentication has been declined so request a new token.
+			settings.authenticationToken = "";
 		}
 	}
 
-	private final void waitWhileHandlerStatusIs(HandlerStatus status) {
-		while (handlerStatus == status){
-			if (connectionStatus == Status.Disconnecting || connectionStatus == Status.Disconnected) {
-				break;
+	private final void createParameters(VtsClient client, Settings settings, int channels, int buckets, float startFrequency, float endFrequency, long requestTimeout) throws IOException, InterruptedException {
+		// The definitions of all parameters that should exist in VTS.
+		final String[] parameterNames = createParameterNames(channels, buckets);
+		final List<JsonObject> definitions = new ArrayList<>(parameterNames.length);
+		int parameter = 0;
+		for (int channel = 0; channel < channels; channel++) {
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				for (String type : PARAMETER_TYPES) {
+					final JsonObject jsonData = new JsonObject();
+					jsonData.addProperty("parameterName", parameterNames[parameter++]);
+					jsonData.addProperty("explanation", createTrackingParameterDescription(bucket + 1, buckets, startFrequency, endFrequency, type));
+					jsonData.addProperty("min", 0);
+					jsonData.addProperty("max", 50);
+					jsonData.addProperty("defaultValue", 0);
+					definitions.add(jsonData);
+				}
+			}
+		}
+
+		// VTS does not return the explanations of the parameters, so a hash of all definitions is saved
+		// with the settings. If it still matches then only missing or changed parameters have to be created.
+		final String layout = createParameterLayoutHash(definitions);
+		final boolean layoutUnchanged = layout.equals(settings.vtsParameterLayout);
+
+		final JsonObject listResponse = awaitResponse(client.request("InputParameterListRequest", new JsonObject(), requestTimeout), "InputParameterListRequest");
+		if (!getMessageType(listResponse).equals("InputParameterListResponse") || !getData(listResponse).has("customParameters")) {
+			throw new VtsProtocolException("VTS has sent an unexpected response!");
+		}
+		final Map<String, JsonObject> existingParameters = new HashMap<>();
+		for (JsonElement element : getData(listResponse).getAsJsonArray("customParameters")) {
+			final JsonObject existingParameter = element.getAsJsonObject();
+			existingParameters.put(existingParameter.get("name").getAsString(), existingParameter);
+		}
+
+		// Send all requests at once and only then wait for the responses. VTS answers them in any
+		// order and the futures are completed by their request ids, so the whole update takes
+		// about one round trip instead of one round trip per parameter. Creating a parameter that
+		// already exists replaces its definition.
+		final List<String> createdParameters = new ArrayList<>();
+		final List<CompletableFuture<JsonObject>> creationRequests = new ArrayList<>();
+		for (JsonObject definition : definitions) {
+			final String parameterName = definition.get("parameterName").getAsString();
+			if (layoutUnchanged && isSameParameter(existingParameters.get(parameterName), definition)) {
+				continue;
 			}
+			createdParameters.add(parameterName);
+			creationRequests.add(client.request("ParameterCreationRequest", definition, requestTimeout));
+		}
 
+		// Delete the parameters of an older layout that are not needed anymore, e.g. if there are fewer buckets now.
+		final List<String> deletedParameters = new ArrayList<>();
+		final List<CompletableFuture<JsonObject>> deletionRequests = new ArrayList<>();
+		final Set<String> requiredParameters = new HashSet<>(Arrays.asList(parameterNames));
+		for (JsonObject existingParameter : existingParameters.values()) {
+			final String parameterName = existingParameter.get("name").getAsString();
+			if (requiredParameters.contains(parameterName) || !parameterName.startsWith("FrequencyRange")
+					|| !existingParameter.has("addedBy") || !existingParameter.get("addedBy").getAsString().equals(Plugin.getPluginName())) {
+				continue;
+			}
+			final JsonObject jsonData = new JsonObject();
+			jsonData.addProperty("parameterName", parameterName);
+			deletedParameters.add(parameterName);
+			deletionRequests.add(client.request("ParameterDeletionRequest", jsonData, requestTimeout));
+		}
+
+		// Wait for every response and collect all failures such that they can be reported together.
+		final List<String> failedParameters = new ArrayList<>();
+		boolean rejected = false;
+		IOException cause = null;
+		for (parameter = 0; parameter < createdParameters.size(); parameter++) {
 			try {
-				// Wait on the lock such that the other worker thread
-				// can notify this thread of changes.
-				connectionLock.wait();
-			} catch (InterruptedException exception) { }
+				final JsonObject response = awaitResponse(creationRequests.get(parameter), "ParameterCreationRequest");
+				if (!getMessageType(response).equals("ParameterCreationResponse") || !getData(response).has("parameterName")) {
+					failedParameters.add(createdParameters.get(parameter));
+					rejected = true;
+				}
+			} catch (IOException ioException) {
+				failedParameters.add(createdParameters.get(parameter));
+				if (cause == null) {
+					cause = ioException;
+				}
+			}
+		}
+
+		// Unused parameters only clutter the list in VTS, so failing to delete them is not an error.
+		for (parameter = 0; parameter < deletedParameters.size(); parameter++) {
+			try {
+				final JsonObject response = awaitResponse(deletionRequests.get(parameter), "ParameterDeletionRequest");
+				if (!getMessageType(response).equals("ParameterDeletionResponse")) {
+					System.err.println(String.format("Could not delete unused tracking parameter %s", deletedParameters.get(parameter)));
+				}
+			} catch (IOException ioException) {
+				System.err.println(String.format("Could not delete unused tracking parameter %s", deletedParameters.get(parameter)));
+			}
+		}
+
+		if (!failedParameters.isEmpty()) {
+			// Create all parameters again on the next connection.
+			settings.vtsParameterLayout = "";
+			final String message = String.format("Could not create %d of %d tracking parameters: %s",
+					failedParameters.size(), createdParameters.size(), String.join(", ", failedParameters));
+			// VTS rejecting a definition would reject it again, only missing answers are worth a reconnect.
+			throw rejected ? new VtsProtocolException(message, cause) : new IOException(message, cause);
+		}
+		settings.vtsParameterLayout = layout;
+
+		System.out.println(String.format("Created %d and deleted %d tracking parameters, %d were already up to date",
+				createdParameters.size(), deletedParameters.size(), definitions.size() - createdParameters.size()));
+	}
+
+	// Returns true if the parameter exists in VTS with the same range and default value as the definition.
+	private static final boolean isSameParameter(JsonObject existingParameter, JsonObject definition) {
+		if (existingParameter == null) {
+			return false;
+		}
+		for (String property : new String[] { "min", "max", "defaultValue" }) {
+			if (!existingParameter.has(property)
+					|| existingParameter.get(property).getAsDouble() != definition.get(property).getAsDouble()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final String createParameterLayoutHash(List<JsonObject> definitions) throws IOException {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (JsonObject definition : definitions) {
+				digest.update(definition.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+			throw new IOException("Could not calculate the parameter layout!", noSuchAlgorithmException);
+		}
+	}
+
+	// Returns the names of all parameters. For each channel and bucket the "Level" parameter is followed by the "Peak" parameter.
+	static final String[] createParameterNames(int channels, int buckets) {
+		final String[] names = new String[channels * buckets * PARAMETER_TYPES.length];
+		int parameter = 0;
+		for (int channel = 0; channel < channels; channel++) {
+			for (int bucket = 0; bucket < buckets; bucket++) {
+				for (String type : PARAMETER_TYPES) {
+					names[parameter++] = createParameterName(bucket, channel, channels, type);
+				}
+			}
 		}
+		return names;
+	}
+
+	static final String createParameterName(int bucket, int channel, int channels, String type) {
+		return String.format("FrequencyRange%d%s%s", bucket + 1, createChannelName(channel, channels), type);
+	}
+
+	private static final JsonObject awaitResponse(CompletableFuture<JsonObject> request, String messageType) throws IOException, InterruptedException {
+		try {
+			return request.get();
+		} catch (ExecutionException executionException) {
+			final Throwable cause = executionException.getCause();
+			if (cause instanceof TimeoutException) {
+				throw new IOException(String.format("VTS did not answer the %s in time!", messageType), cause);
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException("The VTS API connection has been terminated!", cause);
+		}
+	}
+
+	private static final String getMessageType(JsonObject response) {
+		return response.get("messageType").getAsString();
+	}
+
+	private static final JsonObject getData(JsonObject response) {
+		return response.get("data").getAsJsonObject();
 	}
 
 	private final String createTrackingParameterDescription(int bucket, int buckets, float frequencyStart, float frequencyEnd, String type) {
@@ -414,7 +613,7 @@ public class VtsService {
 		return String.format("Loudness of the audio in the frequency range from %.2f Hz to %.2f Hz", lowerFrequency, upperFrequency);
 	}
 
-	private final String createChannelName(int channel, int channels) {
+	static final String createChannelName(int channel, int channels) {
 		if (channels == FftData.CHANNELS_MONO) {
 			if (channel == FftData.CHANNEL_MONO) {
 				return "";
@@ -459,18 +658,154 @@ public class VtsService {
 		}
 	}
 
-	private final TextMessage createVtsJsonMessage(String messageType, JsonObject jsonData) {
+	private final TextMessage createVtsJsonMessage(String messageType, String requestId, JsonObject jsonData) {
 		JsonObject json = new JsonObject();
 		json.addProperty("apiName", "VTubeStudioPublicAPI");
 		json.addProperty("apiVersion", "1.0");
-		json.addProperty("requestID", UUID.randomUUID().toString());
+		json.addProperty("requestID", requestId);
 		json.addProperty("messageType", messageType);
 		json.add("data", jsonData);
 		return new TextMessage(gson.toJson(json));
 	}
 
+	// An error that VTS reported on purpose, e.g. the user denied the plugin or VTS does not understand
+	// the requests. Reconnecting does not help, so these errors stop the connection instead.
+	static final class VtsProtocolException extends IOException {
+
+		private static final long serialVersionUID = 6417385230907142651L;
+
+		VtsProtocolException(String message) {
+			super(message);
+		}
+
+		VtsProtocolException(String message, Throwable cause) {
+			super(message, cause);
+		}
+
+	}
+
+	// A request that waits for its response. The deadline is checked by a sweep over all requests
+	// of a connection, so a request does not need its own timer.
+	private static final class PendingRequest extends CompletableFuture<JsonObject> {
+
+		private final String requestId;
+		private final String messageType;
+		private final long timeoutMillis;
+		private final long deadline;
+
+		PendingRequest(String requestId, String messageType, long timeoutMillis) {
+			this.requestId = requestId;
+			this.messageType = messageType;
+			this.timeoutMillis = timeoutMillis;
+			this.deadline = (timeoutMillis > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+		}
+
+		final boolean isExpired(long now) {
+			return timeoutMillis > 0 && now - deadline >= 0;
+		}
+
+		final TimeoutException createTimeoutException() {
+			return new TimeoutException(String.format("No response to %s %s after %d ms", messageType, requestId, timeoutMillis));
+		}
+
+	}
+
+	// Sends requests to VTS and completes the future of a request when the response with the same
+	// request id arrives. The request ids are taken from a counter which is much cheaper than random UUIDs.
+	private class VtsClient {
+
+		private final Map<String, PendingRequest> pendingRequests;
+		private final ScheduledExecutorService timeouts;
+		private volatile WebSocketSession session;
+
+		public VtsClient() {
+			this.pendingRequests = new ConcurrentHashMap<>();
+			this.timeouts = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "VTS request timeouts");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.session = null;
+
+			// A single task fails all requests whose time is up, so the answer to a request may
+			// be late by up to one sweep interval before the request fails.
+			this.timeouts.scheduleWithFixedDelay(this::expireRequests, TIMEOUT_SWEEP_INTERVAL, TIMEOUT_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
+		public final void setSession(WebSocketSession session) {
+			this.session = session;
+		}
+
+		// Sends the request and returns the future of the response. A timeout of zero waits forever.
+		// Must only be called by a single thread since the web socket session does not allow concurrent sending.
+		public final CompletableFuture<JsonObject> request(String messageType, JsonObject jsonData, long timeoutMillis) throws IOException {
+			final long requestId = nextRequestId();
+			return request(requestId, messageType, createVtsJsonMessage(messageType, Long.toString(requestId), jsonData), timeoutMillis);
+		}
+
+		// Sends a message that already contains the request id (see nextRequestId).
+		public final CompletableFuture<JsonObject> request(long id, String messageType, TextMessage message, long timeoutMillis) throws IOException {
+			final String requestId = Long.toString(id);
+			final PendingRequest response = new PendingRequest(requestId, messageType, timeoutMillis);
+			pendingRequests.put(requestId, response);
+
+			try {
+				session.sendMessage(message);
+			} catch (IOException | RuntimeException exception) {
+				pendingRequests.remove(requestId);
+				throw exception;
+			}
+			return response;
+		}
+
+		public final long nextRequestId() {
+			return requestIds.incrementAndGet();
+		}
+
+		// Completes the request with the same request id. Returns false if there was no such request.
+		public final boolean complete(String requestId, JsonObject response) {
+			final PendingRequest request = pendingRequests.remove(requestId);
+			if (request == null) {
+				return false;
+			}
+			request.complete(response);
+			return true;
+		}
+
+		private final void expireRequests() {
+			// The map can be changed while it is iterated, a request is only failed by whoever removes it.
+			final long now = System.nanoTime();
+			for (PendingRequest request : pendingRequests.values()) {
+				if (request.isExpired(now) && pendingRequests.remove(request.requestId, request)) {
+					request.completeExceptionally(request.createTimeoutException());
+				}
+			}
+		}
+
+		public final void failAll(IOException exception) {
+			for (String requestId : pendingRequests.keySet()) {
+				final PendingRequest request = pendingRequests.remove(requestId);
+				if (request != null) {
+					request.completeExceptionally(exception);
+				}
+			}
+		}
+
+		public final void close() {
+			failAll(new IOException("The VTS API connection has been closed!"));
+			timeouts.shutdownNow();
+		}
+
+	}
+
 	public class Handler extends TextWebSocketHandler {
 
+		private final VtsClient client;
+
+		public Handler(VtsClient client) {
+			this.client = client;
+		}
+
 		@Override
 		protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
 			// There has been a response from VTube Studio so process it.
@@ -481,89 +816,29 @@ public class VtsService {
 			}
 
 			final JsonObject jsonObject = json.getAsJsonObject();
-			if (!jsonObject.has("apiName") || !jsonObject.has("messageType") || !jsonObject.has("data"))
-			if (jsonObject.get("apiName").getAsString().equals("VTubeStudioPublicAPI")) {
+			if (!jsonObject.has("apiName") || !jsonObject.has("messageType") || !jsonObject.has("data") || !jsonObject.has("requestID")) {
+				return;
+			}
+			if (!jsonObject.get("apiName").getAsString().equals("VTubeStudioPublicAPI")) {
 				return;
 			}
 
 			// The JSON data received is a VTube Studio packet.
-			final String messageType = jsonObject.get("messageType").getAsString();
-			final JsonObject jsonData = jsonObject.get("data").getAsJsonObject();
-
-			// Notify the other thread about the response.
-			synchronized (connectionLock) {
-			switch (handlerStatus) {
-				case Initializing:
-					handlerStatus = HandlerStatus.InvalidResponse;
-					break;
-
-				case AuthenticationTokenRequest:
-					if (messageType.equals("APIError")) {
-						handlerStatus = HandlerStatus.AuthenticationDenied;
-					} else if (messageType.equals("AuthenticationTokenResponse") && jsonData.has("authenticationToken")) {
-						handlerStatus = HandlerStatus.AuthenticationRequest;
-						handlerSettings.authenticationToken = jsonData.get("authenticationToken").getAsString();
-					} else {
-						handlerStatus = HandlerStatus.InvalidResponse;
-					}
-					break;
-
-				case AuthenticationRequest:
-					if (messageType.equals("APIError")) {
-						handlerStatus = HandlerStatus.AuthenticationTokenRequest;
-					} else if (messageType.equals("AuthenticationResponse") && jsonData.has("authenticated")) {
-						handlerStatus = jsonData.get("authenticated").getAsBoolean()
-							? HandlerStatus.Authenticated
-							// Authentication has been declined
-							: HandlerStatus.AuthenticationTokenRequest;
-					} else {
-						handlerStatus = HandlerStatus.InvalidResponse;
-					}
-					break;
-
-				case CreateTrackingParameters:
-					if (messageType.equals("APIError")) {
-						handlerStatus = HandlerStatus.CreateTrackingParameterFailed;
-					} else if (messageType.equals("ParameterCreationResponse") && jsonData.has("parameterName")) {
-						handlerStatus = HandlerStatus.CreateTrackingParameterSuccessful;
-					} else {
-						handlerStatus = HandlerStatus.InvalidResponse;
-					}
-					break;
-
-				case InjectFftData:
-					if (messageType.equals("APIError")) {
-						handlerStatus = HandlerStatus.InjectFftDataFailed;
-					} else if (messageType.equals("InjectParameterDataResponse")) {
-						handlerStatus = HandlerStatus.InjectFftDataSuccessful;
-					} else {
-						handlerStatus = HandlerStatus.InvalidResponse;
-					}
-					break;
-
-				default:
-					handlerStatus = HandlerStatus.InvalidResponse;
-					break;
-				}
+			// Notify the waiting request about the response without taking any lock.
+			client.complete(jsonObject.get("requestID").getAsString(), jsonObject);
+		}
 
-				connectionLock.notifyAll();
-			}
+		@Override
+		public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+			// Wake up everybody that still waits for a response.
+			client.failAll(new IOException("The VTS API connection has been closed: " + status));
 		}
 
 	}
 
 	public static enum Status {
 
-		Disconnected, Connecting, Connected, Disconnecting
-
-	}
-
-	public static enum HandlerStatus {
-
-		Initializing, InitializationFinished, InvalidResponse, Terminated,
-		AuthenticationTokenRequest, AuthenticationRequest, AuthenticationDenied, Authenticated,
-		CreateTrackingParameters, CreateTrackingParameterSuccessful, CreateTrackingParameterFailed,
-		WaitForFftData, InjectFftData, InjectFftDataSuccessful, InjectFftDataFailed
+		Disconnected, Connecting, Connected, Reconnecting, Disconnecting
 
 	}
 
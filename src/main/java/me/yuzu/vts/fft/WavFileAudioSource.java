@@ -0,0 +1,172 @@
+package me.yuzu.vts.fft;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+public class WavFileAudioSource implements AudioSource {
+
+	private static final int WAVE_FORMAT_PCM = 0x0001;
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	private final Path path;
+	private final boolean paced;
+
+	private AudioFormat format;
+	private ByteBuffer data;
+	private volatile boolean stopped;
+	private long startTime;
+	private volatile long framesRead;
+
+	// Creates a source that reads a PCM WAV file. A paced source delivers the audio at the speed it would
+	// be played back, otherwise the file is read as fast as the analysis can process it.
+	public WavFileAudioSource(Path path, boolean paced) {
+		this.path = path;
+		this.paced = paced;
+		this.format = null;
+		this.data = null;
+		this.stopped = false;
+	}
+
+	@Override
+	public void open(int channels, int bufferFrames) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// The whole file is mapped into memory, the operating system loads it while it is read.
+			final MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			file.order(ByteOrder.LITTLE_ENDIAN);
+
+			if (file.remaining() < 12 || file.getInt(0) != 0x46464952 || file.getInt(8) != 0x45564157) { // "RIFF" and "WAVE"
+				throw new IOException(String.format("%s is not a WAV file!", path));
+			}
+
+			// Go through the chunks until the format and the data have been found.
+			int position = 12;
+			while (position + 8 <= file.limit() && (format == null || data == null)) {
+				final int chunkId = file.getInt(position);
+				final long chunkSize = file.getInt(position + 4) & 0xFFFFFFFFL;
+				final int chunkStart = position + 8;
+				final int chunkEnd = (int) Math.min(file.limit(), chunkStart + chunkSize);
+
+				if (chunkId == 0x20746D66) { // "fmt "
+					format = readFormat(file, chunkStart, chunkEnd, channels);
+				} else if (chunkId == 0x61746164) { // "data"
+					file.limit(chunkEnd).position(chunkStart);
+					data = file.slice();
+					file.limit(file.capacity());
+				}
+
+				// Chunks are aligned to two bytes.
+				position = chunkStart + (int) ((chunkSize + 1) & ~1L);
+			}
+
+			if (format == null || data == null) {
+				throw new IOException(String.format("%s does not contain any audio data!", path));
+			}
+		}
+
+		stopped = false;
+		startTime = System.nanoTime();
+		framesRead = 0;
+	}
+
+	private final AudioFormat readFormat(MappedByteBuffer file, int start, int end, int channels) throws IOException {
+		if (end - start < 16) {
+			throw new IOException(String.format("%s has an invalid format!", path));
+		}
+
+		int formatTag = file.getShort(start) & 0xFFFF;
+		final int fileChannels = file.getShort(start + 2) & 0xFFFF;
+		final int sampleRate = file.getInt(start + 4);
+		final int bitsPerSample = file.getShort(start + 14) & 0xFFFF;
+		if (formatTag == WAVE_FORMAT_EXTENSIBLE && end - start >= 26) {
+			// The first two bytes of the sub format GUID contain the actual format.
+			formatTag = file.getShort(start + 24) & 0xFFFF;
+		}
+
+		// 8 bit WAV files are unsigned and are not supported, same as floating point samples.
+		if (formatTag != WAVE_FORMAT_PCM || (bitsPerSample != 16 && bitsPerSample != 24 && bitsPerSample != 32)) {
+			throw new IOException(String.format("%s has to contain 16, 24 or 32 bit PCM audio!", path));
+		}
+		if (fileChannels != channels) {
+			throw new IOException(String.format("%s has %d channels but %d are required!", path, fileChannels, channels));
+		}
+
+		return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, sampleRate, bitsPerSample, channels, bitsPerSample * channels / 8, sampleRate, false);
+	}
+
+	@Override
+	public AudioFormat getFormat() {
+		return format;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) {
+		final int frameSize = format.getFrameSize();
+		final int bytes = Math.min(length, data.remaining()) / frameSize * frameSize;
+		if (stopped || bytes == 0) {
+			return 0;
+		}
+
+		// A paced source waits until the audio would have been recorded in real time.
+		if (paced) {
+			final long readyTime = startTime + (long) ((framesRead + bytes / frameSize) / format.getFrameRate() * 1000000000.0d);
+			long remaining;
+			while (!stopped && (remaining = readyTime - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(this, remaining);
+			}
+			if (stopped) {
+				return 0;
+			}
+		}
+
+		data.get(buffer, offset, bytes);
+		framesRead += bytes / frameSize;
+		return bytes;
+	}
+
+	@Override
+	public int available() {
+		// A paced source has the audio waiting that is already due. The other source reads the file
+		// on demand, so nothing is waiting and the data counts as recorded when it is read.
+		if (!paced) {
+			return 0;
+		}
+
+		final long dueFrames = (long) ((System.nanoTime() - startTime) / 1000000000.0d * format.getFrameRate());
+		return (int) Math.max(0, Math.min(data.remaining(), (dueFrames - framesRead) * format.getFrameSize()));
+	}
+
+	// Number of frames that have been read since the source has been opened.
+	public final long getFramesRead() {
+		return framesRead;
+	}
+
+	@Override
+	public boolean isRealTime() {
+		return paced;
+	}
+
+	@Override
+	public void stop() {
+		stopped = true;
+	}
+
+	@Override
+	public void close() {
+		stopped = true;
+		data = null;
+	}
+
+	@Override
+	public String getName() {
+		return path.getFileName().toString();
+	}
+
+}
@@ -0,0 +1,74 @@
+package me.yuzu.vts.fft;
+
+import me.yuzu.vts.fft.FftService.WindowType;
+
+public class WindowTables {
+
+	// Cached window coefficients for each window type and power of two size
+	// (second index is the logarithm of the window size).
+	private final double[][][] tables;
+
+	public WindowTables() {
+		this.tables = new double[WindowType.values().length][31][];
+	}
+
+	// Returns the cached coefficients of the window. The table is only computed on
+	// the first request for a window type and size.
+	public final double[] get(WindowType windowType, int size) {
+		if (size < 1 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("Window size has to be a power of two: " + size);
+		}
+		if (windowType == null) { windowType = WindowType.NUTTALL; }
+
+		final double[][] windowTables = tables[windowType.ordinal()];
+		final int order = Integer.numberOfTrailingZeros(size);
+		double[] table = windowTables[order];
+		if (table == null) {
+			table = create(windowType, size);
+			windowTables[order] = table;
+		}
+
+		return table;
+	}
+
+	public static final double[] create(WindowType windowType, int size) {
+		final double[] table = new double[size];
+		for (int sampleFrame = 0; sampleFrame < size; sampleFrame++) {
+			table[sampleFrame] = applyWindow(windowType, sampleFrame, size);
+		}
+		return table;
+	}
+
+	private static final double applyWindow(WindowType windowType, int sampleFrame, int sampleFrames) {
+		// See https://en.wikipedia.org/wiki/Window_function for more window functions.
+		// The window function fades the input data on the start and end to silent such
+		// that at the borders no step is present which would introduce additional
+		// frequencies into the Fast Fourier Transformation.
+		final double phase = 2.0d * Math.PI * sampleFrame / sampleFrames;
+		switch (windowType) {
+		case NONE:
+			return 1.0d;
+
+		case HAMMING:
+			return 0.53836d - 0.46164d * Math.cos(phase);
+
+		case HANN:
+			return 0.5d - 0.5d * Math.cos(phase);
+
+		case NUTTALL:
+			return 0.355768d - 0.487396d * Math.cos(phase)
+					+ 0.144232d * Math.cos(2.0d * phase)
+					- 0.012604d * Math.cos(3.0d * phase);
+
+		case BLACKMAN_HARRIS:
+			return 0.35875d - 0.48829d * Math.cos(phase)
+					+ 0.14128d * Math.cos(2.0d * phase)
+					- 0.01168d * Math.cos(3.0d * phase);
+
+		default:
+			throw new IllegalArgumentException("Unsupported window type");
+
+		}
+	}
+
+}